@@ -0,0 +1,91 @@
+package com.chrisplus.rootmanager.container;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the parsing done by the output thread of a {@link Shell}, without any process: lines
+ * are split, searched for the sentinel and decoded the same way as in the shell. The baseline
+ * parses the same output with a {@link BufferedReader}, as the shell did before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+
+    @Param({"10000"})
+    public int lines;
+
+    @Param({"16", "120"})
+    public int lineLength;
+
+    private byte[] output;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < lineLength; i++) {
+            line.append((char) ('a' + i % 26));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append(line).append('\n');
+        }
+        sb.append(new String(Shell.TOKEN_BYTES, "UTF-8")).append(" 0 0\n");
+        output = sb.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public long readOutput() throws IOException {
+        OutputReader reader = new OutputReader(new ByteArrayInputStream(output));
+        long chars = 0;
+        while (true) {
+            int length = reader.fillLine();
+            if (length < 0) {
+                break;
+            }
+            int pos = reader.indexOf(Shell.TOKEN_BYTES);
+            if (pos >= 0) {
+                reader.seek(pos + Shell.TOKEN_BYTES.length);
+                reader.nextNumber();
+                chars += reader.nextNumber();
+                break;
+            }
+            chars += reader.decode(0, length).length();
+        }
+        reader.close();
+        return chars;
+    }
+
+    @Benchmark
+    public long readLineBaseline() throws IOException {
+        String token = new String(Shell.TOKEN_BYTES, "UTF-8");
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(output), "UTF-8"));
+        long chars = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int pos = line.indexOf(token);
+            if (pos >= 0) {
+                String[] fields = line.substring(pos + token.length()).trim().split(" ");
+                chars += Integer.parseInt(fields[1]);
+                break;
+            }
+            chars += line.length();
+        }
+        reader.close();
+        return chars;
+    }
+}
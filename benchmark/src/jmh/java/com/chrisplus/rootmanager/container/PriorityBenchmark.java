@@ -0,0 +1,84 @@
+package com.chrisplus.rootmanager.container;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the latency of a short command added behind a batch of slow bulk commands, comparing
+ * an interactive command with one of the same priority as the load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PriorityBenchmark {
+
+    @Param({"INTERACTIVE", "BULK"})
+    public Command.Priority priority;
+
+    @Param({"32"})
+    public int load;
+
+    private Shell shell;
+
+    private Command lastLoad;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        shell = Shell.startCustomShell("/bin/sh");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Shell.closeCustomShell();
+    }
+
+    @Setup(Level.Invocation)
+    public void addLoad() throws IOException {
+        List<Command> batch = new ArrayList<>(load);
+        for (int i = 0; i < load; i++) {
+            batch.add(new Sink("sleep 0.005").setPriority(Command.Priority.BULK));
+        }
+        shell.addAll(batch);
+        lastLoad = batch.get(load - 1);
+    }
+
+    @TearDown(Level.Invocation)
+    public void drainLoad() throws InterruptedException {
+        lastLoad.waitForFinish();
+    }
+
+    @Benchmark
+    public int underLoad() throws Exception {
+        return shell.add(new Sink("echo probe").setPriority(priority)).waitForFinish();
+    }
+
+    private static class Sink extends Command {
+
+        Sink(String... commands) {
+            super(commands);
+        }
+
+        @Override
+        public void onUpdate(int id, String message) {
+
+        }
+
+        @Override
+        public void onFinished(int id) {
+
+        }
+    }
+}
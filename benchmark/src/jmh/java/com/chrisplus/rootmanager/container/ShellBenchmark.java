@@ -0,0 +1,122 @@
+package com.chrisplus.rootmanager.container;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the shell engine end to end, with <i>/bin/sh</i> standing in for <i>su</i>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShellBenchmark {
+
+    @Param({"100"})
+    public int batchSize;
+
+    @Param({"100000"})
+    public int outputLines;
+
+    @Param({"4194304"})
+    public int outputBytes;
+
+    private Shell shell;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        shell = Shell.startCustomShell("/bin/sh");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Shell.closeCustomShell();
+    }
+
+    /**
+     * A single short command, from adding it until it finishes.
+     */
+    @Benchmark
+    public int roundTrip() throws Exception {
+        return shell.add(new LineCounter("echo round trip")).waitForFinish();
+    }
+
+    /**
+     * A batch of short commands pipelined through the shell.
+     */
+    @Benchmark
+    public int batch() throws Exception {
+        List<Command> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new LineCounter("echo " + i));
+        }
+        shell.addAll(batch);
+        return batch.get(batchSize - 1).waitForFinish();
+    }
+
+    /**
+     * A command writing many lines of text.
+     */
+    @Benchmark
+    public long largeOutput() throws Exception {
+        LineCounter command = new LineCounter("seq 1 " + outputLines);
+        shell.add(command).waitForFinish();
+        return command.lines;
+    }
+
+    /**
+     * A command writing raw bytes.
+     */
+    @Benchmark
+    public long binaryOutput() throws Exception {
+        BinaryCommand command = new BinaryCommand(new NullOutputStream(),
+                "head -c " + outputBytes + " /dev/zero");
+        shell.add(command).waitForFinish();
+        return command.getBytesRead();
+    }
+
+    private static class LineCounter extends Command {
+
+        private long lines;
+
+        LineCounter(String... commands) {
+            super(commands);
+        }
+
+        @Override
+        public void onUpdate(int id, String message) {
+            lines++;
+        }
+
+        @Override
+        public void onFinished(int id) {
+
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+
+        }
+    }
+}
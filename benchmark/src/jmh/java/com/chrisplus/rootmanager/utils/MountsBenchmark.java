@@ -0,0 +1,57 @@
+package com.chrisplus.rootmanager.utils;
+
+import com.chrisplus.rootmanager.container.Mount;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure parsing a mount table the size of the one of a typical device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MountsBenchmark {
+
+    private static final String[] SAMPLE = {
+            "rootfs / rootfs ro,seclabel,relatime 0 0",
+            "tmpfs /dev tmpfs rw,seclabel,nosuid,relatime,mode=755 0 0",
+            "proc /proc proc rw,relatime,gid=3009,hidepid=2 0 0",
+            "/dev/block/dm-0 /system ext4 ro,seclabel,relatime,data=ordered 0 0",
+            "/dev/block/bootdevice/by-name/userdata /data f2fs rw,lazytime,seclabel,nosuid,"
+                    + "nodev,noatime,background_gc=on,discard,user_xattr,inline_xattr 0 0",
+            "/data/media /mnt/runtime/default/emulated sdcardfs rw,nosuid,nodev,noexec,"
+                    + "noatime,fsuid=1023,fsgid=1023,gid=1015,multiuser,mask=6 0 0"
+    };
+
+    @Param({"60"})
+    public int mounts;
+
+    private String table;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < mounts; i++) {
+            sb.append(SAMPLE[i % SAMPLE.length]).append('\n');
+        }
+        table = sb.toString();
+    }
+
+    @Benchmark
+    public List<Mount> parseMounts() throws IOException {
+        return Remounter.parseMounts(new BufferedReader(new StringReader(table)));
+    }
+}
@@ -26,6 +26,12 @@ public class Constants {
      */
     public static final String COMMAND_INSTALL_PATCH = "LD_LIBRARY_PATH=/vendor/lib:/system/lib ";
 
+    /**
+     * The command string for installing an app read from the standard input, followed by its
+     * size in bytes.
+     */
+    public static final String COMMAND_INSTALL_STDIN = "pm install -r -S ";
+
     /**
      * Install apps on SD-card.
      */
@@ -71,6 +77,67 @@ public class Constants {
      */
     public static final int COMMAND_TIMEOUT = 1000 * 60 * 5;
 
+    /**
+     * The default number of unfinished commands a shell can hold.
+     */
+    public static final int SHELL_QUEUE_CAPACITY = 256;
+
+    /**
+     * The default number of lines buffered for a streaming command.
+     */
+    public static final int STREAM_BUFFER_LINES = 512;
+
+    /**
+     * How long to wait for a cancelled command before all shells are terminated, 5 seconds.
+     */
+    public static final int COMMAND_CANCEL_TIMEOUT = 1000 * 5;
+
+    /**
+     * How many times to retry starting a shell.
+     */
+    public static final int SHELL_START_RETRIES = 5;
+
+    /**
+     * The delay before the first retry of starting a shell, doubled for each further retry.
+     */
+    public static final long SHELL_START_RETRY_DELAY = 50;
+
+    /**
+     * The default number of commands written to a shell ahead of the running one.
+     */
+    public static final int SHELL_INFLIGHT_WINDOW = 8;
+
+    /**
+     * The default time after which a waiting command is scheduled like one of the next better
+     * priority, 1 second.
+     */
+    public static final long COMMAND_AGING_TIME = 1000;
+
+    /**
+     * The default number of results kept by the query cache.
+     */
+    public static final int QUERY_CACHE_SIZE = 64;
+
+    /**
+     * How long the process list is cached for process checks, half a second.
+     */
+    public static final long PROCESS_LIST_CACHE_TIME = 500;
+
+    /**
+     * The default time between two reads of the process table by a process watcher, 1 second.
+     */
+    public static final long PROCESS_WATCH_INTERVAL = 1000;
+
+    /**
+     * The default time between SIGTERM and SIGKILL when killing processes, 1 second.
+     */
+    public static final long KILL_GRACE_PERIOD = 1000;
+
+    /**
+     * The default size of output kept in memory before it is spilled to a file, 1 MB.
+     */
+    public static final long OUTPUT_MEMORY_THRESHOLD = 1024 * 1024;
+
     /**
      * The path of system
      */
@@ -0,0 +1,90 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.Constants;
+
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.UUID;
+
+/**
+ * A command whose standard output is raw bytes, i.e., <i>"screencap -p"</i> or <i>"cat"</i> of a
+ * database file.
+ * <p>
+ * The output is copied to the given sink without any charset decoding. The end of output is
+ * detected by a random marker generated for each command, so no length has to be known in
+ * advance. Lines written to the standard error are collected as text and can be read by
+ * {@link #getErrorMessage()}.
+ * </p>
+ */
+public class BinaryCommand extends Command {
+
+    private final OutputStream sink;
+
+    private final String marker;
+
+    private final StringBuilder errorSb = new StringBuilder();
+
+    private volatile long bytesRead;
+
+    public BinaryCommand(OutputStream sink, String... commands) {
+        this(sink, Constants.COMMAND_TIMEOUT, commands);
+    }
+
+    public BinaryCommand(OutputStream sink, int timeout, String... commands) {
+        super(timeout, commands);
+        this.sink = sink;
+        this.marker = "RMBIN" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    @Override
+    public void onUpdate(int id, String message) {
+
+    }
+
+    @Override
+    public void onError(int id, String message) {
+        synchronized (errorSb) {
+            errorSb.append(message).append('\n');
+        }
+    }
+
+    @Override
+    public void onFinished(int id) {
+
+    }
+
+    /**
+     * Get the number of bytes copied to the sink.
+     *
+     * @return the size of the output.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public String getErrorMessage() {
+        synchronized (errorSb) {
+            return errorSb.toString();
+        }
+    }
+
+    OutputStream getSink() {
+        return sink;
+    }
+
+    String getMarker() {
+        return marker;
+    }
+
+    byte[] getMarkerBytes() {
+        try {
+            return marker.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+}
@@ -0,0 +1,334 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.Constants;
+import com.chrisplus.rootmanager.utils.Logger;
+import com.chrisplus.rootmanager.utils.ShellUtils;
+
+import java.io.IOException;
+
+public abstract class Command {
+
+    private static final String TAG = Command.class.getSimpleName();
+
+    /**
+     * The scheduling class of a command. A shell writes commands of a better priority first.
+     */
+    public enum Priority {
+        /**
+         * Short commands somebody is waiting for, i.e., <i>"pidof"</i> for the UI.
+         */
+        INTERACTIVE,
+        /**
+         * The default.
+         */
+        NORMAL,
+        /**
+         * Long running work which can wait, i.e., installing packages or recording the screen.
+         */
+        BULK
+    }
+
+    private String[] commands;
+
+    private boolean isFinished;
+
+    private int exitCode;
+
+    private long timeout;
+
+    private int id;
+
+    /* Set by the shell when the sentinel of each stream has been read */
+    boolean outputDone;
+
+    boolean errorDone;
+
+    int pendingExitCode;
+
+    /* Timestamps and output counters reported to the shell listener */
+    long queuedAt;
+
+    volatile long writtenAt;
+
+    /* Set once the queue of a shell has taken this command */
+    volatile boolean queued;
+
+    private long finishedAt;
+
+    long outputLines;
+
+    long outputBytes;
+
+    private Shell shell;
+
+    private long pid = -1;
+
+    private boolean cancelled;
+
+    private Priority priority = Priority.NORMAL;
+
+    /* Abstract function should be implemented by caller */
+
+    public Command(String... commands) {
+        this(Constants.COMMAND_TIMEOUT, commands);
+    }
+
+    public Command(int timeout, String... commands) {
+        this.id = ShellUtils.generateCommandID();
+        this.timeout = timeout;
+        this.commands = commands;
+    }
+
+    public abstract void onUpdate(int id, String message);
+
+    public abstract void onFinished(int id);
+
+    /**
+     * Called for each line the command writes to the standard error. Errors are handed to
+     * {@link #onUpdate(int, String)} unless this is overridden.
+     *
+     * @param id      the command id.
+     * @param message the line.
+     */
+    public void onError(int id, String message) {
+        onUpdate(id, message);
+    }
+
+    public int getID() {
+        return id;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Set the scheduling class of this command, only effective before it is added to a shell.
+     *
+     * @param priority the priority.
+     * @return this command.
+     */
+    public Command setPriority(Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority must not be null");
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Get the exit code of this command.
+     *
+     * @return the exit code, only meaningful once the command has finished.
+     */
+    public int getExitCode() {
+        synchronized (this) {
+            return exitCode;
+        }
+    }
+
+    /**
+     * Get the time this command waited in its shell before being written to it.
+     *
+     * @return the time in nanoseconds, or 0 if it has not been written.
+     */
+    public long getQueueTime() {
+        long written = writtenAt;
+        return written == 0 ? 0 : written - queuedAt;
+    }
+
+    /**
+     * Get the time from writing this command to the shell until it finished.
+     *
+     * @return the time in nanoseconds, or 0 if it has not been written or not finished.
+     */
+    public long getExecutionTime() {
+        long written = writtenAt;
+        synchronized (this) {
+            return written == 0 || !isFinished ? 0 : finishedAt - written;
+        }
+    }
+
+    /**
+     * Check if this command has been written to its shell. A command cancelled before is skipped
+     * and never written.
+     *
+     * @return true once the command has been written.
+     */
+    public boolean isWritten() {
+        return writtenAt != 0;
+    }
+
+    public boolean isFinished() {
+        synchronized (this) {
+            return isFinished;
+        }
+    }
+
+    public boolean isCancelled() {
+        synchronized (this) {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Cancel this command without touching other commands of the shell.
+     * <p>
+     * A command which has not been sent to the shell yet is skipped. A running command is killed
+     * together with its child processes, and the shell goes on with the next command. A cancelled
+     * command finishes with the exit code -1.
+     * </p>
+     */
+    public void cancel() {
+        Shell target;
+        long running;
+        synchronized (this) {
+            if (isFinished || cancelled) {
+                return;
+            }
+            cancelled = true;
+            target = shell;
+            running = pid;
+        }
+        ShellUtils.log(Logger.Level.DEBUG, TAG, "Cancel command %s", id);
+        if (target != null && running > 0) {
+            target.kill(running);
+        }
+    }
+
+    void attach(Shell shell) {
+        synchronized (this) {
+            this.shell = shell;
+        }
+    }
+
+    /**
+     * Called by the shell once the command runs in its own process.
+     *
+     * @param pid the process id of the command.
+     */
+    void setPid(long pid) {
+        Shell target;
+        synchronized (this) {
+            this.pid = pid;
+            if (!cancelled || isFinished) {
+                return;
+            }
+            target = shell;
+        }
+        if (target != null) {
+            target.kill(pid);
+        }
+    }
+
+    public void setExitCode(int code) {
+        synchronized (this) {
+            if (isFinished) {
+                return;
+            }
+            exitCode = cancelled ? -1 : code;
+            finishedAt = System.nanoTime();
+            isFinished = true;
+            onFinished(id);
+            this.notifyAll();
+        }
+    }
+
+    public void terminate(String reason) {
+        try {
+            ShellUtils.Log("Terminate all shells with reason " + reason);
+            Shell.closeAll();
+            setExitCode(-1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            ShellUtils.Log("Terminate all shells and io exception happens");
+        }
+    }
+
+    /**
+     * Wait for this command to finish. If it does not finish in time, it is cancelled, and only
+     * if cancelling does not work either, all shells are terminated.
+     *
+     * @param timeout the timeout in milliseconds.
+     * @return the exit code.
+     */
+    public int waitForFinish(long timeout) throws InterruptedException {
+        synchronized (this) {
+            if (!waitUntilFinished(timeout)) {
+                ShellUtils.Log("Timeout Exception has occurred.");
+                cancel();
+                if (!waitUntilFinished(Constants.COMMAND_CANCEL_TIMEOUT)) {
+                    terminate("Timeout Exception");
+                }
+            }
+        }
+        return exitCode;
+    }
+
+    private boolean waitUntilFinished(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!isFinished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            this.wait(remaining);
+        }
+        return true;
+    }
+
+    public int keepAlive() throws InterruptedException {
+        synchronized (this) {
+            while (!isFinished) {
+                /* test function */
+                this.wait();
+            }
+        }
+
+        return exitCode;
+    }
+
+    public int waitForFinish() throws InterruptedException {
+        synchronized (this) {
+            waitForFinish(timeout);
+        }
+        return exitCode;
+    }
+
+    /**
+     * Get the name of the program run by this command, i.e., <i>"pm"</i> for
+     * <i>"pm install -r a.apk"</i>. Leading variable assignments are skipped.
+     *
+     * @return the program name, or an empty string if there is none.
+     */
+    public String getProgram() {
+        if (commands == null || commands.length == 0 || commands[0] == null) {
+            return "";
+        }
+        for (String word : commands[0].trim().split("\\s+")) {
+            if (word.length() > 0 && word.indexOf('=') < 0) {
+                return word;
+            }
+        }
+        return "";
+    }
+
+    public String getCommand() {
+        if (commands == null || commands.length == 0) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < commands.length; i++) {
+            sb.append(commands[i]);
+            sb.append('\n');
+        }
+        String command = sb.toString();
+        if (ShellUtils.isLoggable(Logger.Level.VERBOSE)) {
+            ShellUtils.log(Logger.Level.VERBOSE, TAG,
+                    "Sending command(s): " + ShellUtils.redact(command));
+        }
+        return command;
+    }
+
+}
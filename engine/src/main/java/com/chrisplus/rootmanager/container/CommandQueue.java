@@ -0,0 +1,371 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.Constants;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded queue holding the commands of one {@link Shell}.
+ * <p>
+ * Added commands wait in one FIFO per {@link Command.Priority}. Only a small window of commands
+ * is written into the shell ahead of time, so a command added later with a higher priority does
+ * not queue up behind everything added before it. Each time the window has room, the command
+ * with the best priority goes next, where every aging period a command waits counts as one
+ * priority class better, so bulk work is delayed but never starved.
+ * </p>
+ * <p>
+ * A command gets its sequence number when it is written. The writer and the reader of the shell
+ * walk the sequence independently, and the slot of a command is released as soon as it finishes.
+ * </p>
+ */
+public class CommandQueue {
+
+    /**
+     * What to do when a command is added to a full queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until the shell finishes a command and frees a slot.
+         */
+        BLOCK,
+        /**
+         * Throw an {@link IllegalStateException} immediately.
+         */
+        REJECT
+    }
+
+    private final ArrayDeque<Command>[] pending;
+    private final Command[] window;
+    private final int capacity;
+    private final long agingTime;
+    private final OverflowPolicy policy;
+
+    private int pendingCount;
+
+    /* The oldest unfinished command in the window */
+    private long head;
+    /* The sequence number of the next command to write */
+    private long tail;
+
+    private boolean close = false;
+
+    private Runnable writeListener;
+
+    public CommandQueue(int capacity, OverflowPolicy policy) {
+        this(capacity, Constants.SHELL_INFLIGHT_WINDOW, Constants.COMMAND_AGING_TIME, policy);
+    }
+
+    /**
+     * @param capacity  the maximum number of unfinished commands.
+     * @param window    the maximum number of commands written to the shell and not finished.
+     * @param agingTime the waiting time in milliseconds after which a command is scheduled like
+     *                  one of the next better priority, or 0 to disable aging.
+     * @param policy    what to do when a command is added to a full queue.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CommandQueue(int capacity, int window, long agingTime, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal queue capacity " + capacity);
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("Illegal in-flight window " + window);
+        }
+        this.pending = new ArrayDeque[Command.Priority.values().length];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new ArrayDeque<Command>();
+        }
+        this.window = new Command[window];
+        this.capacity = capacity;
+        this.agingTime = agingTime * 1000000L;
+        this.policy = policy;
+    }
+
+    /**
+     * Set what to run when commands become writable while an adding thread waits for a free
+     * slot, so a batch larger than the free space can make progress.
+     *
+     * @param listener the listener, i.e., scheduling the writer of the shell.
+     */
+    synchronized void setWriteListener(Runnable listener) {
+        this.writeListener = listener;
+    }
+
+    /**
+     * Append a command to the queue of its priority.
+     *
+     * @param command the command.
+     */
+    synchronized void put(Command command) throws InterruptedIOException {
+        while (!close && size() >= capacity) {
+            if (policy == OverflowPolicy.REJECT) {
+                throw new IllegalStateException("Command queue is full");
+            }
+            awaitSlot();
+        }
+        if (close) {
+            throw new IllegalStateException("Unable to add commands to a closed shell");
+        }
+        enqueue(command);
+        notifyAll();
+    }
+
+    /**
+     * Append a batch of commands, waking the writer once for the whole batch.
+     * <p>
+     * With {@link OverflowPolicy#REJECT} the batch is rejected as a whole if it does not fit.
+     * With {@link OverflowPolicy#BLOCK} a batch larger than the free space is added in parts as
+     * slots become free.
+     * </p>
+     *
+     * @param batch the commands.
+     */
+    synchronized void putAll(List<Command> batch) throws InterruptedIOException {
+        if (policy == OverflowPolicy.REJECT && size() + batch.size() > capacity) {
+            throw new IllegalStateException("Command queue is full");
+        }
+        int index = 0;
+        while (index < batch.size()) {
+            while (!close && size() >= capacity) {
+                awaitSlot();
+            }
+            if (close) {
+                throw new IllegalStateException("Unable to add commands to a closed shell");
+            }
+            while (index < batch.size() && size() < capacity) {
+                enqueue(batch.get(index++));
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Move as many pending commands as the window allows into it, in the order of their
+     * priority.
+     *
+     * @return the sequence number of the first command to write, the last one is
+     * {@link #getTail()} - 1, or -1 if there is nothing to write now.
+     */
+    synchronized long pollWrite() {
+        if (!canWrite()) {
+            return -1;
+        }
+
+        long first = tail;
+        long now = System.nanoTime();
+        while (pendingCount > 0 && tail - head < window.length) {
+            window[slot(tail++)] = poll(now);
+        }
+        notifyAll();
+        return first;
+    }
+
+    /**
+     * Check if there are pending commands and room in the window for them.
+     *
+     * @return true if {@link #pollWrite()} would return a command.
+     */
+    synchronized boolean canWrite() {
+        return pendingCount > 0 && tail - head < window.length;
+    }
+
+    /**
+     * Check if the window has drained far enough to be refilled. Refilling half a window at a
+     * time writes several commands per batch while the rest of the window keeps the shell busy.
+     *
+     * @return true if there are pending commands and at most half the window is in flight.
+     */
+    synchronized boolean needsRefill() {
+        return pendingCount > 0 && tail - head <= window.length / 2;
+    }
+
+    /**
+     * Check if the queue is closed and every command has been written.
+     *
+     * @return true if nothing will be written any more.
+     */
+    synchronized boolean isDrained() {
+        return close && pendingCount == 0;
+    }
+
+    /**
+     * Get an unfinished command by its sequence number.
+     *
+     * @param seq the sequence number.
+     * @return the command, or null if it has not been written or has been released.
+     */
+    synchronized Command get(long seq) {
+        if (seq < head || seq >= tail) {
+            return null;
+        }
+        return window[slot(seq)];
+    }
+
+    /**
+     * Wait for the command with the given sequence number to be written.
+     *
+     * @param seq the sequence number.
+     * @return the command, or null if the queue is closed before it is written.
+     */
+    synchronized Command awaitRead(long seq) throws InterruptedException {
+        while (seq >= tail && (!close || pendingCount > 0)) {
+            wait();
+        }
+        return get(seq);
+    }
+
+    /**
+     * Release the slot of a finished command. The head of the window moves past every released
+     * command, so a command released slightly out of order is reclaimed together with the
+     * commands before it.
+     *
+     * @param seq the sequence number of the finished command.
+     */
+    synchronized void release(long seq) {
+        if (seq < head || seq >= tail) {
+            return;
+        }
+        window[slot(seq)] = null;
+        while (head < tail && window[slot(head)] == null) {
+            head++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Close the queue and take every unfinished command out of it, i.e., when the shell has
+     * died and the commands will never finish.
+     *
+     * @return the commands written to the shell first, then the pending ones.
+     */
+    synchronized List<Command> abort() {
+        List<Command> unfinished = new ArrayList<>(size());
+        for (long seq = head; seq < tail; seq++) {
+            Command command = window[slot(seq)];
+            window[slot(seq)] = null;
+            if (command != null) {
+                unfinished.add(command);
+            }
+        }
+        head = tail;
+        for (ArrayDeque<Command> queue : pending) {
+            unfinished.addAll(queue);
+            queue.clear();
+        }
+        pendingCount = 0;
+        close = true;
+        notifyAll();
+        return unfinished;
+    }
+
+    /**
+     * Get every unfinished command, the ones written to the shell first.
+     *
+     * @return the commands.
+     */
+    synchronized List<Command> snapshot() {
+        List<Command> unfinished = new ArrayList<>(size());
+        for (long seq = head; seq < tail; seq++) {
+            Command command = window[slot(seq)];
+            if (command != null) {
+                unfinished.add(command);
+            }
+        }
+        for (ArrayDeque<Command> queue : pending) {
+            unfinished.addAll(queue);
+        }
+        return unfinished;
+    }
+
+    synchronized long getHead() {
+        return head;
+    }
+
+    synchronized long getTail() {
+        return tail;
+    }
+
+    /**
+     * Get the number of unfinished commands.
+     *
+     * @return the size of the queue.
+     */
+    public synchronized int size() {
+        return pendingCount + (int) (tail - head);
+    }
+
+    /**
+     * Get the number of unfinished commands which run before a command of the given priority
+     * added now, not counting aging.
+     *
+     * @param priority the priority.
+     * @return the commands written to the shell and the pending ones of the same or a better
+     * priority.
+     */
+    public synchronized int countAhead(Command.Priority priority) {
+        int ahead = (int) (tail - head);
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            ahead += pending[i].size();
+        }
+        return ahead;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized boolean isClosed() {
+        return close;
+    }
+
+    synchronized void close() {
+        close = true;
+        notifyAll();
+    }
+
+    private void enqueue(Command command) {
+        command.queued = true;
+        pending[command.getPriority().ordinal()].add(command);
+        pendingCount++;
+    }
+
+    /**
+     * Take the pending command to write next. The head of each priority queue is ranked by its
+     * priority, improved by one class per aging period it has waited.
+     */
+    private Command poll(long now) {
+        int best = -1;
+        long bestRank = Long.MAX_VALUE;
+        for (int i = 0; i < pending.length; i++) {
+            Command first = pending[i].peek();
+            if (first == null) {
+                continue;
+            }
+            long rank = agingTime > 0 ? i - (now - first.queuedAt) / agingTime : i;
+            if (rank < bestRank) {
+                best = i;
+                bestRank = rank;
+            }
+        }
+        pendingCount--;
+        return pending[best].poll();
+    }
+
+    private void awaitSlot() throws InterruptedIOException {
+        if (writeListener != null && canWrite()) {
+            writeListener.run();
+        }
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free slot");
+        }
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % window.length);
+    }
+}
@@ -0,0 +1,145 @@
+package com.chrisplus.rootmanager.container;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A command signalling many processes in one shell round trip.
+ * <p>
+ * The processes are sent <i>SIGTERM</i> first. Those still running after the grace period are
+ * sent <i>SIGKILL</i>, or all of them right away if there is no grace period. The command waits
+ * for each process to exit and reports the outcome per pid, see {@link #getOutcomes()}.
+ * </p>
+ */
+public class KillCommand extends Command {
+
+    /**
+     * What happened to a process, from the best to the worst outcome.
+     */
+    public enum Outcome {
+        /**
+         * The process did not exist.
+         */
+        NOT_FOUND,
+        /**
+         * The process exited after <i>SIGTERM</i>.
+         */
+        TERMINATED,
+        /**
+         * The process exited after <i>SIGKILL</i>.
+         */
+        KILLED,
+        /**
+         * The process is still running, i.e., it is protected or the shell has no root.
+         */
+        ALIVE
+    }
+
+    /* How often the shell polls for exited processes, in milliseconds */
+    private static final int POLL_INTERVAL = 100;
+
+    private static final String POLL_SLEEP = "sleep 0.1";
+
+    /* How long to wait for a process to exit after SIGKILL, in polls */
+    private static final int KILL_POLLS = 10;
+
+    private final Map<Integer, Outcome> outcomes = new LinkedHashMap<>();
+
+    /**
+     * @param pids        the processes.
+     * @param gracePeriod the time in milliseconds between <i>SIGTERM</i> and <i>SIGKILL</i>, or
+     *                    0 to send <i>SIGKILL</i> only.
+     */
+    public KillCommand(int[] pids, long gracePeriod) {
+        super(buildScript(pids, gracePeriod));
+        for (int pid : pids) {
+            outcomes.put(pid, Outcome.ALIVE);
+        }
+    }
+
+    @Override
+    public void onUpdate(int id, String message) {
+        int space = message.indexOf(' ');
+        if (space <= 0 || space + 1 >= message.length()) {
+            return;
+        }
+        Outcome outcome;
+        switch (message.charAt(space + 1)) {
+            case 'N':
+                outcome = Outcome.NOT_FOUND;
+                break;
+            case 'T':
+                outcome = Outcome.TERMINATED;
+                break;
+            case 'K':
+                outcome = Outcome.KILLED;
+                break;
+            default:
+                outcome = Outcome.ALIVE;
+                break;
+        }
+        try {
+            int pid = Integer.parseInt(message.substring(0, space));
+            synchronized (outcomes) {
+                if (outcomes.containsKey(pid)) {
+                    outcomes.put(pid, outcome);
+                }
+            }
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void onFinished(int id) {
+
+    }
+
+    /**
+     * Get the outcome of each process, only complete once the command has finished. Processes
+     * the shell has not reported on are {@link Outcome#ALIVE}.
+     *
+     * @return the outcomes by pid, in the order the pids were given.
+     */
+    public Map<Integer, Outcome> getOutcomes() {
+        synchronized (outcomes) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(outcomes));
+        }
+    }
+
+    /**
+     * Generate the script. Each process is reported as a line of its pid and a letter of its
+     * outcome. A zombie counts as exited, as it only waits to be reaped by its parent. Liveness
+     * is checked with shell builtins only, so polling forks nothing but the sleep between polls.
+     */
+    private static String buildScript(int[] pids, long gracePeriod) {
+        StringBuilder list = new StringBuilder();
+        for (int pid : pids) {
+            list.append(' ').append(pid);
+        }
+        long polls = (gracePeriod + POLL_INTERVAL - 1) / POLL_INTERVAL;
+
+        StringBuilder script = new StringBuilder();
+        script.append("alive() { [ -d /proc/$1 ] && { read -r l < /proc/$1/stat; } 2>/dev/null")
+                .append(" && t=${l##*) } && [ \"${t%% *}\" != Z ]; }\n")
+                .append("left() { a=; for p; do alive $p && a=\"$a $p\"; done; }\n")
+                .append("s=; for p in").append(list)
+                .append("; do if alive $p; then s=\"$s $p\"; else echo \"$p N\"; fi; done\n");
+        if (polls > 0) {
+            script.append("[ -n \"$s\" ] && kill -15 $s 2>/dev/null\n")
+                    .append("i=0; while [ $i -lt ").append(polls)
+                    .append(" ]; do left $s; [ -z \"$a\" ] && break; ").append(POLL_SLEEP)
+                    .append("; i=$((i+1)); done\n");
+        }
+        script.append("k=; for p in $s; do if alive $p; then k=\"$k $p\"; else echo \"$p T\"; fi;")
+                .append(" done\n")
+                .append("[ -n \"$k\" ] && kill -9 $k 2>/dev/null\n")
+                .append("j=0; while [ $j -lt ").append(KILL_POLLS)
+                .append(" ]; do left $k; [ -z \"$a\" ] && break; ").append(POLL_SLEEP)
+                .append("; j=$((j+1)); done\n")
+                .append("for p in $k; do if alive $p; then echo \"$p A\"; else echo \"$p K\"; fi;")
+                .append(" done");
+        return script.toString();
+    }
+}
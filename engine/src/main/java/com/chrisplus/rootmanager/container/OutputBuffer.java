@@ -0,0 +1,234 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.Constants;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Collect the output of a command which may be too large for the memory, i.e.,
+ * <i>"dumpsys"</i> or <i>"pm list packages -f"</i>.
+ * <p>
+ * Lines are kept in memory up to a threshold, then everything is spilled to a temporary file
+ * and further lines are appended to it. The lines are read back lazily by iterating this buffer
+ * once the command has finished, where a spilled file is memory mapped so only the lines being
+ * read occupy the heap. Close the buffer to delete its file.
+ * </p>
+ */
+public class OutputBuffer implements OutputSink, Iterable<String>, Closeable {
+
+    private final long threshold;
+
+    private final File directory;
+
+    private List<String> lines = new ArrayList<>();
+
+    /* The estimated heap size of the lines in memory, two bytes per char */
+    private long memorySize;
+
+    private long count;
+
+    private File file;
+
+    private Writer writer;
+
+    private IOException error;
+
+    private boolean finished;
+
+    public OutputBuffer() {
+        this(Constants.OUTPUT_MEMORY_THRESHOLD, null);
+    }
+
+    /**
+     * @param threshold the number of bytes kept in memory before spilling to a file.
+     * @param directory the directory of the temporary file, or null for the default temporary
+     *                  directory.
+     */
+    public OutputBuffer(long threshold, File directory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Illegal memory threshold " + threshold);
+        }
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized void addLine(String line) {
+        count++;
+        if (error != null) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                memorySize += 2 * line.length();
+                lines.add(line);
+                if (memorySize > threshold) {
+                    spill();
+                }
+            } else {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            error = e;
+        }
+    }
+
+    @Override
+    public synchronized void finish() {
+        finished = true;
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Get the number of lines added.
+     *
+     * @return the line count.
+     */
+    public synchronized long getLineCount() {
+        return count;
+    }
+
+    /**
+     * Check if the output has been spilled to a file.
+     *
+     * @return true if the lines are read from a file.
+     */
+    public synchronized boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Get the error of writing the temporary file, after which further lines are dropped.
+     *
+     * @return the error, or null if writing did not fail.
+     */
+    public synchronized IOException getError() {
+        return error;
+    }
+
+    /**
+     * Read the lines, only allowed once the command has finished.
+     *
+     * @return an iterator reading the lines lazily.
+     */
+    @Override
+    public synchronized Iterator<String> iterator() {
+        if (!finished) {
+            throw new IllegalStateException("Output can not be read before the command finishes");
+        }
+        if (file == null) {
+            return Collections.unmodifiableList(lines).iterator();
+        }
+        try {
+            return new MappedLineIterator(map(file));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read spilled output", e);
+        }
+    }
+
+    /**
+     * Delete the temporary file, the lines can not be read afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        finish();
+        lines = Collections.emptyList();
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("rootmanager", ".out", directory);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        lines = Collections.emptyList();
+        memorySize = 0;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Decode one line at a time from the mapped file, reusing the byte buffer of the line.
+     */
+    private static class MappedLineIterator implements Iterator<String> {
+
+        private final MappedByteBuffer buffer;
+
+        private byte[] scratch = new byte[256];
+
+        MappedLineIterator(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return buffer.hasRemaining();
+        }
+
+        @Override
+        public String next() {
+            if (!buffer.hasRemaining()) {
+                throw new NoSuchElementException();
+            }
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    break;
+                }
+                if (length == scratch.length) {
+                    byte[] grown = new byte[scratch.length * 2];
+                    System.arraycopy(scratch, 0, grown, 0, length);
+                    scratch = grown;
+                }
+                scratch[length++] = b;
+            }
+            try {
+                return new String(scratch, 0, length, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.chrisplus.rootmanager.container;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads the standard output of a shell as raw bytes.
+ * <p>
+ * Text output is split into lines and decoded per line, binary output is copied to a sink
+ * untouched until the end marker of the command shows up. Lines can also be read into an
+ * internal buffer with {@link #fillLine()} and inspected in place, so the end-of-command
+ * sentinel is found and parsed without allocating anything.
+ * </p>
+ */
+class OutputReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int cursor;
+
+    private final byte[] staging = new byte[BUFFER_SIZE];
+
+    OutputReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read a line of text, the line terminator is not included.
+     *
+     * @return the line, or null at the end of stream.
+     */
+    String readLine() throws IOException {
+        int length = fillLine();
+        if (length < 0) {
+            return null;
+        }
+        return decode(0, length);
+    }
+
+    /**
+     * Read the next line into the internal line buffer, the line terminator is not included.
+     *
+     * @return the length of the line, or -1 at the end of stream.
+     */
+    int fillLine() throws IOException {
+        int length = 0;
+        boolean terminated = false;
+        while (!terminated) {
+            if (pos >= limit && !fill()) {
+                if (length == 0) {
+                    lineLength = 0;
+                    return -1;
+                }
+                break;
+            }
+            int start = pos;
+            int end = start;
+            while (end < limit && buffer[end] != '\n') {
+                end++;
+            }
+            terminated = end < limit;
+            pos = terminated ? end + 1 : end;
+
+            int count = end - start;
+            if (length + count > line.length) {
+                byte[] grown = new byte[Math.max(line.length * 2, length + count)];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            System.arraycopy(buffer, start, line, length, count);
+            length += count;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = length;
+        return length;
+    }
+
+    /**
+     * Find a pattern in the current line.
+     *
+     * @param pattern the bytes to find.
+     * @return the position of the first match, or -1.
+     */
+    int indexOf(byte[] pattern) {
+        byte first = pattern[0];
+        int last = lineLength - pattern.length;
+        for (int i = 0; i <= last; i++) {
+            if (line[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && line[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move the number cursor of the current line.
+     *
+     * @param position the position in the line.
+     */
+    void seek(int position) {
+        cursor = position;
+    }
+
+    /**
+     * Parse the next number of the current line from the cursor. Leading spaces are skipped.
+     *
+     * @return the number, or {@link Long#MIN_VALUE} if there is no number at the cursor.
+     */
+    long nextNumber() {
+        while (cursor < lineLength && line[cursor] == ' ') {
+            cursor++;
+        }
+        boolean negative = false;
+        if (cursor < lineLength && line[cursor] == '-') {
+            negative = true;
+            cursor++;
+        }
+        int start = cursor;
+        long value = 0;
+        while (cursor < lineLength && line[cursor] >= '0' && line[cursor] <= '9') {
+            value = value * 10 + (line[cursor] - '0');
+            cursor++;
+        }
+        if (cursor == start) {
+            return Long.MIN_VALUE;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decode a part of the current line.
+     *
+     * @param from the start position, inclusive.
+     * @param to   the end position, exclusive.
+     * @return the text.
+     */
+    String decode(int from, int to) throws IOException {
+        return new String(line, from, to - from, "UTF-8");
+    }
+
+    /**
+     * Copy bytes to the sink until the marker is found. The marker itself is consumed but not
+     * copied.
+     *
+     * @param marker the end marker.
+     * @param sink   where the bytes before the marker go.
+     * @return the number of bytes copied.
+     */
+    long copyUntil(byte[] marker, OutputStream sink) throws IOException {
+        int[] failure = failure(marker);
+        long copied = 0;
+        int staged = 0;
+        int matched = 0;
+
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new EOFException("Stream closed before the end marker");
+            }
+            byte b = buffer[pos++];
+            while (matched > 0 && b != marker[matched]) {
+                int fallback = failure[matched - 1];
+                for (int i = 0; i < matched - fallback; i++) {
+                    if (staged == staging.length) {
+                        sink.write(staging, 0, staged);
+                        copied += staged;
+                        staged = 0;
+                    }
+                    staging[staged++] = marker[i];
+                }
+                matched = fallback;
+            }
+            if (b == marker[matched]) {
+                matched++;
+                if (matched == marker.length) {
+                    break;
+                }
+            } else {
+                if (staged == staging.length) {
+                    sink.write(staging, 0, staged);
+                    copied += staged;
+                    staged = 0;
+                }
+                staging[staged++] = b;
+            }
+        }
+
+        if (staged > 0) {
+            sink.write(staging, 0, staged);
+            copied += staged;
+        }
+        sink.flush();
+        return copied;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        pos = 0;
+        limit = count;
+        return true;
+    }
+
+    /* The failure function of the Knuth-Morris-Pratt search */
+    private static int[] failure(byte[] marker) {
+        int[] failure = new int[marker.length];
+        int k = 0;
+        for (int i = 1; i < marker.length; i++) {
+            while (k > 0 && marker[i] != marker[k]) {
+                k = failure[k - 1];
+            }
+            if (marker[i] == marker[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+}
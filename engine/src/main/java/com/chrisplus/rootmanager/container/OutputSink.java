@@ -0,0 +1,23 @@
+package com.chrisplus.rootmanager.container;
+
+/**
+ * Receives the output of a command line by line, i.e., {@link OutputBuffer} or
+ * {@link TailBuffer}.
+ * <p>
+ * Lines are added by the output thread of the shell, one at a time and in order.
+ * </p>
+ */
+public interface OutputSink {
+
+    /**
+     * Add a line of output.
+     *
+     * @param line the line, without its line break.
+     */
+    void addLine(String line);
+
+    /**
+     * Called once the command has finished and no more lines will be added.
+     */
+    void finish();
+}
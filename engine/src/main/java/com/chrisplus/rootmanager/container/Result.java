@@ -0,0 +1,366 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.utils.Logger;
+import com.chrisplus.rootmanager.utils.ShellUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of running a command.
+ * <p>
+ * A result is immutable once built, so it can be shared between threads, i.e., by every caller
+ * of a {@link SingleFlight} or through a {@link ResultCache}. Besides the classified status it
+ * carries the exit code of the shell command, its output and error lines and its timings when
+ * these are known.
+ * </p>
+ */
+public final class Result {
+
+    /* members */
+    private final ResultEnum status;
+
+    private final String message;
+
+    private final int statusCode;
+
+    private final String errorMessage;
+
+    private final int exitCode;
+
+    private final List<String> outputLines;
+
+    private final List<String> errorLines;
+
+    private final long queueTime;
+
+    private final long execTime;
+
+    private Result(ResultBuilder builder) {
+        status = builder.inEnum;
+        message = builder.customMessage != null ? builder.customMessage : status.getMessage();
+        statusCode = status.getStatusCode();
+        errorMessage = builder.errorMessage;
+        exitCode = builder.exitCode;
+        outputLines = copyOf(builder.outputLines);
+        errorLines = copyOf(builder.errorLines);
+        queueTime = builder.queueTime;
+        execTime = builder.execTime;
+    }
+
+    public static ResultBuilder newBuilder() {
+        return new ResultBuilder();
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Get the classified status of the command.
+     *
+     * @return the status.
+     */
+    public ResultEnum getStatus() {
+        return status;
+    }
+
+    /**
+     * Get what the command wrote to the standard error, kept apart from {@link #getMessage()}.
+     *
+     * @return the error output, or an empty string.
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Get the exit code of the shell command.
+     *
+     * @return the exit code, or -1 if the command did not run to its end.
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Get the lines the command wrote to the standard output.
+     *
+     * @return the unmodifiable lines, empty if the output was not kept.
+     */
+    public List<String> getOutputLines() {
+        return outputLines;
+    }
+
+    /**
+     * Get the lines the command wrote to the standard error.
+     *
+     * @return the unmodifiable lines, empty if the error output was not kept.
+     */
+    public List<String> getErrorLines() {
+        return errorLines;
+    }
+
+    /**
+     * Get the time the command waited in the shell before being written to it.
+     *
+     * @return the time in nanoseconds, or 0 if unknown.
+     */
+    public long getQueueTime() {
+        return queueTime;
+    }
+
+    /**
+     * Get the time from writing the command to the shell until it finished.
+     *
+     * @return the time in nanoseconds, or 0 if unknown.
+     */
+    public long getExecutionTime() {
+        return execTime;
+    }
+
+    public Boolean getResult() {
+        if (ShellUtils.isLoggable(Logger.Level.VERBOSE)) {
+            ShellUtils.log(Logger.Level.VERBOSE, null, "Status Code is " + statusCode);
+        }
+        if (statusCode == 0) {
+            return true;
+        } else if (statusCode <= 100) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public enum ResultEnum {
+
+        COMMAND_SUCCESS(90, "Command Executed Successfully"),
+        COMMAND_FAILED_TIMEOUT(401, "Run Command Timeout"),
+        COMMAND_FAILED_DENIED(402, "Run Command Permission Denied"),
+        COMMAND_FAILED_INTERRUPTED(403, "Run Command Interrupted"),
+        COMMAND_FAILED(409, "Run Command Failed"),
+
+        INSTALL_SUCCESS(80, "Application installed Successfully"),
+        INSTALL_FAILED_NOSPACE(404, "Install Failed because of no enough space"),
+        INSTALL_FAILED_WRONGCONTAINER(405, "Install Failed Wrong container"),
+        INSTALL_FAILED_WRONGCER(406, "Install Failed Wrong Cer or version"),
+        INSTALL_FIALED(407, "Install Failed"),
+        INSTALL_CANCELLED(410, "Install Cancelled"),
+
+        UNINSTALL_SUCCESS(70, "Application uninstall Successfully"),
+        UNINSTALL_FAILED(408, "Uninstall App Failed"),
+
+        FAILED(409, "Illegal Parameters or State"),
+        CUSTOM(0, "");
+
+        private final int statusCode;
+
+        private final String message;
+
+        private ResultEnum(int sc, String msg) {
+            statusCode = sc;
+            message = msg;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+    }
+
+    public static class ResultBuilder {
+
+        private ResultEnum inEnum = null;
+
+        private String customMessage = null;
+
+        private String errorMessage = "";
+
+        private int exitCode = -1;
+
+        private List<String> outputLines = null;
+
+        private List<String> errorLines = null;
+
+        private long queueTime;
+
+        private long execTime;
+
+        public ResultBuilder setCommandSuccess() {
+            inEnum = ResultEnum.COMMAND_SUCCESS;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setCommandFailedTimeout() {
+            inEnum = ResultEnum.COMMAND_FAILED_TIMEOUT;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setCommandFailedDenied() {
+            inEnum = ResultEnum.COMMAND_FAILED_DENIED;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setCommandFailedInterrupted() {
+            inEnum = ResultEnum.COMMAND_FAILED_INTERRUPTED;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setCommandFailed() {
+            inEnum = ResultEnum.COMMAND_FAILED;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setInstallSuccess() {
+            inEnum = ResultEnum.INSTALL_SUCCESS;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setInsallFailedNoSpace() {
+            inEnum = ResultEnum.INSTALL_FAILED_NOSPACE;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setInstallFailedWrongContainer() {
+            inEnum = ResultEnum.INSTALL_FAILED_WRONGCONTAINER;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setInstallFailedWrongCer() {
+            inEnum = ResultEnum.INSTALL_FAILED_WRONGCER;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setInstallFailed() {
+            inEnum = ResultEnum.INSTALL_FIALED;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setInstallCancelled() {
+            inEnum = ResultEnum.INSTALL_CANCELLED;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setUninstallSuccess() {
+            inEnum = ResultEnum.UNINSTALL_SUCCESS;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setUninstallFailed() {
+            inEnum = ResultEnum.UNINSTALL_FAILED;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setFailed() {
+            inEnum = ResultEnum.FAILED;
+            customMessage = null;
+            return this;
+        }
+
+        public ResultBuilder setCustomMessage(String customMessage) {
+            inEnum = ResultEnum.CUSTOM;
+            this.customMessage = customMessage == null ? "" : customMessage;
+            return this;
+        }
+
+        /**
+         * Set the output lines as a custom message, each line ends with a line break.
+         *
+         * @param lines the lines written to the standard output.
+         * @return this builder.
+         */
+        public ResultBuilder setCustomOutput(List<String> lines) {
+            setOutputLines(lines);
+            return setCustomMessage(join(lines));
+        }
+
+        public ResultBuilder setErrorMessage(String errorMessage) {
+            this.errorMessage = errorMessage == null ? "" : errorMessage;
+            return this;
+        }
+
+        /**
+         * Set the error lines, which also become the error message.
+         *
+         * @param lines the lines written to the standard error.
+         * @return this builder.
+         */
+        public ResultBuilder setErrorOutput(List<String> lines) {
+            this.errorLines = lines;
+            return setErrorMessage(join(lines));
+        }
+
+        public ResultBuilder setOutputLines(List<String> lines) {
+            this.outputLines = lines;
+            return this;
+        }
+
+        public ResultBuilder setExitCode(int exitCode) {
+            this.exitCode = exitCode;
+            return this;
+        }
+
+        /**
+         * Take the exit code and the timings of a finished command.
+         *
+         * @param command the command.
+         * @return this builder.
+         */
+        public ResultBuilder setCommand(Command command) {
+            this.exitCode = command.getExitCode();
+            this.queueTime = command.getQueueTime();
+            this.execTime = command.getExecutionTime();
+            return this;
+        }
+
+        public Result build() {
+            if (inEnum == null) {
+                throw new IllegalStateException(
+                        "Get a empty or null error message during command execution, can not " +
+                                "generate result object");
+            }
+
+            return new Result(this);
+        }
+    }
+
+    private static List<String> copyOf(List<String> lines) {
+        if (lines == null || lines.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(lines));
+    }
+
+    private static String join(List<String> lines) {
+        if (lines == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
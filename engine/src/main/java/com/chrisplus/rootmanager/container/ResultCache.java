@@ -0,0 +1,115 @@
+package com.chrisplus.rootmanager.container;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache of command results, each kept for its own time to live.
+ * <p>
+ * When the cache is full the least recently used result is evicted. Every invalidation bumps a
+ * generation counter, and a result computed before the last invalidation is not stored, so a
+ * query racing with a change on the device can not put a stale result back.
+ * </p>
+ */
+public class ResultCache {
+
+    private static class CachedResult {
+
+        final Result result;
+
+        final long expiresAt;
+
+        CachedResult(Result result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Entries in access order, evicting the least recently used one beyond the maximum size.
+     */
+    private static class LruMap extends LinkedHashMap<String, CachedResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private final LruMap entries;
+
+    private long generation;
+
+    public ResultCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Illegal cache size " + maxSize);
+        }
+        this.entries = new LruMap(maxSize);
+    }
+
+    /**
+     * Get a cached result.
+     *
+     * @param key the key, i.e., the command text.
+     * @return the result, or null if it is not cached or has expired.
+     */
+    public synchronized Result get(String key) {
+        CachedResult entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt >= 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Get the current generation, to be passed to {@link #put} with a result computed after
+     * this call.
+     *
+     * @return the generation.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache a result unless the cache has been invalidated since it was computed.
+     *
+     * @param key        the key.
+     * @param result     the result.
+     * @param timeToLive how long the result is valid in milliseconds.
+     * @param generation the generation read before computing the result.
+     */
+    public synchronized void put(String key, Result result, long timeToLive, long generation) {
+        if (generation != this.generation || timeToLive <= 0) {
+            return;
+        }
+        entries.put(key, new CachedResult(result, System.nanoTime() + timeToLive * 1000000L));
+    }
+
+    public synchronized void invalidate(String key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,167 @@
+package com.chrisplus.rootmanager.container;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending {@link Result} of a command running in a {@link Shell}.
+ * <p>
+ * The future is completed by the output thread of the shell when the command finishes. Callers
+ * can block in {@link #get()}, or register a {@link Callback} which is invoked on the completing
+ * thread without parking a thread per command.
+ * </p>
+ */
+public class ResultFuture implements Future<Result> {
+
+    /**
+     * Receive the result of a command once it finishes.
+     * <p>
+     * Callbacks run on the output thread of the shell, so they should return quickly and must
+     * not wait for other commands of the same shell.
+     * </p>
+     */
+    public interface Callback {
+
+        void onResult(Result result);
+    }
+
+    private final List<Callback> callbacks = new ArrayList<>();
+
+    private Result result;
+
+    private boolean done;
+
+    private Command command;
+
+    /**
+     * Create a future which is already completed.
+     *
+     * @param result the result.
+     * @return the completed future.
+     */
+    public static ResultFuture completed(Result result) {
+        ResultFuture future = new ResultFuture();
+        future.set(result);
+        return future;
+    }
+
+    /**
+     * Bind the command producing this future, so the future can cancel it.
+     *
+     * @param command the command.
+     * @return this future.
+     */
+    public synchronized ResultFuture setCommand(Command command) {
+        this.command = command;
+        return this;
+    }
+
+    /**
+     * Complete this future. This is called by the command owning the future, only the first
+     * call takes effect.
+     *
+     * @param result the result of the command.
+     */
+    public void set(Result result) {
+        List<Callback> pending;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            this.result = result;
+            done = true;
+            pending = new ArrayList<>(callbacks);
+            callbacks.clear();
+            this.notifyAll();
+        }
+        for (Callback callback : pending) {
+            callback.onResult(result);
+        }
+    }
+
+    /**
+     * Register a callback. If the future is already completed, the callback is invoked
+     * immediately on the calling thread.
+     *
+     * @param callback the callback.
+     * @return this future.
+     */
+    public ResultFuture addCallback(Callback callback) {
+        Result completed;
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return this;
+            }
+            completed = result;
+        }
+        callback.onResult(completed);
+        return this;
+    }
+
+    /**
+     * Get the result if the command has finished.
+     *
+     * @param valueIfAbsent the value returned when the command is still running.
+     * @return the result or the given value.
+     */
+    public synchronized Result getNow(Result valueIfAbsent) {
+        return done ? result : valueIfAbsent;
+    }
+
+    /**
+     * Cancel the command of this future, see {@link Command#cancel()}. The future completes
+     * once the shell has dropped the command.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Command target;
+        synchronized (this) {
+            if (done || command == null) {
+                return false;
+            }
+            target = command;
+        }
+        target.cancel();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        Command target;
+        synchronized (this) {
+            target = command;
+        }
+        return target != null && target.isCancelled();
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized Result get() throws InterruptedException {
+        while (!done) {
+            this.wait();
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Result get(long timeout, TimeUnit unit) throws InterruptedException,
+            TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result;
+    }
+}
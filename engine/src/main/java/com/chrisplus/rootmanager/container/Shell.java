@@ -0,0 +1,1039 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.Constants;
+import com.chrisplus.rootmanager.exception.PermissionException;
+import com.chrisplus.rootmanager.metrics.ShellListener;
+import com.chrisplus.rootmanager.utils.Logger;
+import com.chrisplus.rootmanager.utils.ShellUtils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Shell {
+
+    private final static String TAG = Shell.class.getSimpleName();
+    private static final String token = "F*D^W@#FGF";
+    static final byte[] TOKEN_BYTES = token.getBytes();
+    private static final String pidToken = "F*D^W@#FGP";
+    private static final byte[] PID_TOKEN_BYTES = pidToken.getBytes();
+    private static final String controlToken = "F*D^W@#FGK";
+
+    /*
+     * Started in place of a plain shell. A loop reads the input and hands it line by line to a
+     * child shell which runs the commands. Lines of the control token are handled by the loop
+     * itself: it kills the given process and all its descendants, found by their parent pid in
+     * /proc with shell builtins only. The loop keeps reading while the child shell waits for a
+     * command, so a command is cancelled without a second root shell.
+     */
+    private static final String DISPATCHER = "echo Started; c='" + controlToken + "';"
+            + " if (print -r -- x) >/dev/null 2>&1; then o() { print -r -- \"$1\"; };"
+            + " else o() { printf '%s\\n' \"$1\"; }; fi;"
+            + " k() { t=$1; a=$1; while [ -n \"$t\" ]; do n=;"
+            + " for s in /proc/[0-9]*/stat; do read -r q r < $s || continue;"
+            + " r=${r##*) }; r=${r#* }; r=${r%% *};"
+            + " case \" $t \" in *\" $r \"*) n=\"$n $q\";; esac; done;"
+            + " a=\"$a$n\"; t=$n; done; kill -9 $a; } 2>/dev/null;"
+            + " while IFS= read -r l; do case $l in \"$c \"*) k ${l#* };; *) o \"$l\";; esac;"
+            + " done | sh\n";
+    private static int shellTimeout = 10000;
+    private static int queueCapacity = Constants.SHELL_QUEUE_CAPACITY;
+    private static CommandQueue.OverflowPolicy overflowPolicy = CommandQueue.OverflowPolicy.BLOCK;
+    private static int inFlightWindow = Constants.SHELL_INFLIGHT_WINDOW;
+    private static long agingTime = Constants.COMMAND_AGING_TIME;
+
+    private static String error = "";
+    private static volatile Shell rootShell = null;
+    private static volatile Shell customShell = null;
+    private static volatile ShellListener listener = null;
+
+    /* Concurrent starts of the shared root or custom shell share one spawn */
+    private static final SingleFlight starts = new SingleFlight();
+
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Shell Thread " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    private static volatile Executor defaultExecutor =
+            Executors.newCachedThreadPool(DEFAULT_THREAD_FACTORY);
+    private static volatile Executor executor = null;
+
+    private final String shellCmd;
+    private final int timeout;
+    private final Process proc;
+    private final OutputReader inputStream;
+    private final OutputReader errorStream;
+    private final OutputStream outputStream;
+
+    private final CommandQueue commands = new CommandQueue(queueCapacity, inFlightWindow,
+            agingTime, overflowPolicy);
+    private volatile boolean close = false;
+
+    private final CountDownLatch errorsDone = new CountDownLatch(1);
+
+    /* Set while a task writing commands is scheduled, so at most one runs at a time */
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private volatile boolean writeFailed = false;
+    private volatile boolean exitWritten = false;
+    private boolean inputClosed = false;
+
+    private Runnable input = new Runnable() {
+        public void run() {
+            try {
+                writeCommands();
+            } catch (IOException e) {
+                e.printStackTrace();
+                writeFailed = true;
+                closeInput();
+            } finally {
+                writing.set(false);
+                if (!writeFailed && !exitWritten
+                        && (commands.canWrite() || commands.isDrained())) {
+                    scheduleWrite();
+                }
+            }
+        }
+    };
+
+    private Runnable output = new Runnable() {
+        public void run() {
+            try {
+                readOutput();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } finally {
+                close = true;
+                commands.close();
+                closeReader(inputStream);
+                closeReader(errorStream);
+                closeInput();
+            }
+        }
+    };
+
+    private Runnable errors = new Runnable() {
+        public void run() {
+            try {
+                readError();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } finally {
+                closeReader(errorStream);
+                errorsDone.countDown();
+            }
+        }
+    };
+
+    private Shell(String cmd, int timeout) throws IOException, TimeoutException, PermissionException {
+
+        ShellUtils.log(Logger.Level.DEBUG, TAG, "Starting shell: %s", cmd);
+
+        this.shellCmd = cmd;
+        this.timeout = timeout;
+        proc = Runtime.getRuntime().exec(cmd);
+
+        commands.setWriteListener(new Runnable() {
+            public void run() {
+                scheduleWrite();
+            }
+        });
+
+        inputStream = new OutputReader(proc.getInputStream());
+        errorStream = new OutputReader(proc.getErrorStream());
+        outputStream = proc.getOutputStream();
+
+        Worker worker = new Worker(this);
+        execute("Shell Handshake", worker);
+
+        try {
+            worker.await(timeout);
+            if (worker.exit == -911) {
+                proc.destroy();
+                closeReader(inputStream);
+                closeReader(inputStream);
+                closeWriter(outputStream);
+                throw new TimeoutException(error);
+            }
+            if (worker.exit == -42) {
+                proc.destroy();
+                closeReader(inputStream);
+                closeReader(errorStream);
+                closeWriter(outputStream);
+                throw new PermissionException("Root Access Denied");
+            } else {
+                execute("Shell Output", output);
+                execute("Shell Error", errors);
+            }
+        } catch (InterruptedException ex) {
+            proc.destroy();
+            Thread.currentThread().interrupt();
+            throw new TimeoutException();
+        }
+    }
+
+    public static Shell getOpenShell() {
+        if (rootShell != null) {
+            return rootShell;
+        } else if (customShell != null) {
+            return customShell;
+        } else {
+            return null;
+        }
+    }
+
+    public static Shell startRootShell() throws IOException, TimeoutException, PermissionException {
+        return Shell.startRootShell(shellTimeout);
+    }
+
+    /**
+     * Start the root shell, or return the running one.
+     * <p>
+     * Concurrent callers share a single start: only the first caller spawns <i>su</i>, the others
+     * wait for its handshake and get the same shell. No lock is held while the shell spawns.
+     * </p>
+     */
+    public static Shell startRootShell(int timeout) throws IOException,
+            TimeoutException, PermissionException {
+        Shell.shellTimeout = timeout;
+        return startShared(true, "su", timeout);
+    }
+
+    public static Shell startCustomShell(String shellPath) throws IOException, TimeoutException,
+            PermissionException {
+        return Shell.startCustomShell(shellPath, shellTimeout);
+    }
+
+    public static Shell startCustomShell(String shellPath, int timeout)
+            throws IOException, TimeoutException, PermissionException {
+        Shell.shellTimeout = timeout;
+        return startShared(false, shellPath, timeout);
+    }
+
+    /**
+     * Return the shared shell of a kind, or spawn it. The class lock only guards the check and
+     * the assignment. The spawn runs on the first caller, the others wait for it and check
+     * again, so if it fails the next caller spawns.
+     */
+    private static Shell startShared(final boolean root, final String cmd, final int timeout)
+            throws IOException, TimeoutException, PermissionException {
+        while (true) {
+            synchronized (Shell.class) {
+                Shell shell = root ? rootShell : customShell;
+                if (shell != null) {
+                    ShellUtils.Log(root ? "Using Existing Root Shell!"
+                            : "Using Existing Custom Shell!");
+                    return shell;
+                }
+            }
+
+            final Shell[] started = {null};
+            final Exception[] failure = {null};
+            ResultFuture start = starts.run(root ? "root" : "custom", new SingleFlight.Call() {
+                public void start(ResultFuture future) {
+                    Result.ResultBuilder result = Result.newBuilder().setCommandFailed();
+                    try {
+                        ShellUtils.Log(root ? "Starting Root Shell!" : "Starting Custom Shell!");
+                        Shell shell = spawn(cmd, timeout);
+                        synchronized (Shell.class) {
+                            if (root) {
+                                rootShell = shell;
+                            } else {
+                                customShell = shell;
+                            }
+                        }
+                        started[0] = shell;
+                        result.setCommandSuccess();
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    } catch (TimeoutException e) {
+                        failure[0] = e;
+                        result.setCommandFailedTimeout();
+                    } catch (PermissionException e) {
+                        failure[0] = e;
+                        result.setCommandFailedDenied();
+                    } finally {
+                        future.set(result.build());
+                    }
+                }
+            });
+
+            if (started[0] != null) {
+                return started[0];
+            }
+            if (failure[0] instanceof IOException) {
+                throw (IOException) failure[0];
+            }
+            if (failure[0] instanceof TimeoutException) {
+                throw (TimeoutException) failure[0];
+            }
+            if (failure[0] instanceof PermissionException) {
+                throw (PermissionException) failure[0];
+            }
+            try {
+                start.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException();
+            }
+        }
+    }
+
+    /**
+     * Start a root shell of its own, not shared with other callers, i.e., for a long running
+     * command which would hold up the commands behind it. The caller closes the shell when done.
+     *
+     * @return the new shell.
+     */
+    public static Shell startPrivateRootShell() throws IOException, TimeoutException,
+            PermissionException {
+        ShellUtils.Log("Starting Private Root Shell!");
+        return spawn("su", shellTimeout);
+    }
+
+    /**
+     * Start the root shell in the background, so the first command does not pay for spawning
+     * <i>su</i>. This might lead to the superuser popup.
+     */
+    public static void prewarmRootShell() {
+        execute("Shell Prewarm", new Runnable() {
+            public void run() {
+                try {
+                    startRootShell();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (TimeoutException e) {
+                    e.printStackTrace();
+                } catch (PermissionException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Spawn a shell, retrying with exponential backoff if the process can not be started.
+     */
+    static Shell spawn(String cmd, int timeout) throws IOException, TimeoutException,
+            PermissionException {
+        long start = System.nanoTime();
+        try {
+            Shell shell = spawnWithRetries(cmd, timeout);
+            ShellListener current = listener;
+            if (current != null) {
+                current.onShellStarted(cmd, System.nanoTime() - start);
+            }
+            return shell;
+        } catch (IOException e) {
+            reportFailure(cmd, start, e);
+            throw e;
+        } catch (TimeoutException e) {
+            reportFailure(cmd, start, e);
+            throw e;
+        } catch (PermissionException e) {
+            reportFailure(cmd, start, e);
+            throw e;
+        }
+    }
+
+    private static Shell spawnWithRetries(String cmd, int timeout) throws IOException,
+            TimeoutException, PermissionException {
+        int retries = 0;
+        while (true) {
+            try {
+                return new Shell(cmd, timeout);
+            } catch (IOException e) {
+                if (retries >= Constants.SHELL_START_RETRIES) {
+                    ShellUtils.log(Logger.Level.ERROR, TAG, "Could not start shell");
+                    throw e;
+                }
+                long delay = Constants.SHELL_START_RETRY_DELAY << retries;
+                retries++;
+                ShellUtils.log(Logger.Level.WARN, TAG, "Retry %s starting shell in %sms", retries,
+                        delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void reportFailure(String cmd, long start, Throwable error) {
+        ShellListener current = listener;
+        if (current != null) {
+            current.onShellFailed(cmd, System.nanoTime() - start, error);
+        }
+    }
+
+    public static void runRootCommand(Command command) throws IOException, TimeoutException,
+            PermissionException {
+        startRootShell().add(command);
+    }
+
+    public static void closeCustomShell() throws IOException {
+        if (customShell == null) {
+            return;
+        }
+        customShell.close();
+    }
+
+    public static void closeRootShell() throws IOException {
+        if (rootShell == null) {
+            return;
+        }
+        rootShell.close();
+    }
+
+    public static void closeAll() throws IOException {
+        closeRootShell();
+        closeCustomShell();
+        ShellPool.closeRootPool();
+    }
+
+    /**
+     * Set the command queue of shells started after this call.
+     *
+     * @param capacity the maximum number of unfinished commands per shell.
+     * @param policy   what to do when a command is added to a full queue.
+     */
+    public static void setQueueCapacity(int capacity, CommandQueue.OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal queue capacity " + capacity);
+        }
+        Shell.queueCapacity = capacity;
+        Shell.overflowPolicy = policy;
+    }
+
+    /**
+     * Set the listener receiving events of all shells, i.e., a
+     * {@link com.chrisplus.rootmanager.metrics.ShellMetrics}.
+     *
+     * @param listener the listener, or null to stop reporting.
+     */
+    public static void setListener(ShellListener listener) {
+        Shell.listener = listener;
+    }
+
+    static ShellListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Set how commands of shells started after this call are scheduled.
+     * <p>
+     * A small window lets commands of a better priority overtake quickly, a larger one pipelines
+     * more commands per write.
+     * </p>
+     *
+     * @param window    the maximum number of commands written ahead of the running one.
+     * @param agingTime the waiting time in milliseconds after which a command is scheduled like
+     *                  one of the next better priority, or 0 to disable aging.
+     */
+    public static void setScheduling(int window, long agingTime) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Illegal in-flight window " + window);
+        }
+        Shell.inFlightWindow = window;
+        Shell.agingTime = agingTime;
+    }
+
+    /**
+     * Set the executor running the I/O tasks of shells.
+     * <p>
+     * Each shell keeps two tasks blocked reading its output for as long as it lives, and runs
+     * short tasks writing commands, doing the handshake and cancelling commands. The executor
+     * must not queue tasks behind the blocked ones, i.e., use a cached thread pool or virtual
+     * threads rather than a small fixed pool.
+     * </p>
+     *
+     * @param executor the executor, or null to use a cached thread pool, see
+     *                 {@link #setThreadFactory(ThreadFactory)}.
+     */
+    public static void setExecutor(Executor executor) {
+        Shell.executor = executor;
+    }
+
+    /**
+     * Set the factory of the cached thread pool used when no executor is set, i.e., to choose
+     * the priority or daemon status of the threads. The default threads are daemon threads.
+     * Threads are renamed after their task while it runs.
+     *
+     * @param threadFactory the factory, or null to use the default.
+     */
+    public static void setThreadFactory(ThreadFactory threadFactory) {
+        Shell.defaultExecutor = Executors.newCachedThreadPool(
+                threadFactory == null ? DEFAULT_THREAD_FACTORY : threadFactory);
+    }
+
+    /**
+     * Run an I/O task on the executor, or on the default thread pool if there is none. Also
+     * used by other background tasks of the engine, i.e., the process watcher.
+     *
+     * @param name the thread name while the task runs.
+     * @param task the task.
+     */
+    public static void execute(final String name, final Runnable task) {
+        Runnable named = new Runnable() {
+            public void run() {
+                Thread thread = Thread.currentThread();
+                String previous = thread.getName();
+                thread.setName(name);
+                try {
+                    task.run();
+                } finally {
+                    thread.setName(previous);
+                }
+            }
+        };
+        Executor current = executor;
+        (current != null ? current : defaultExecutor).execute(named);
+    }
+
+    public static boolean isCustomShellOpen() {
+        if (customShell == null) {
+            return false;
+        } else {
+            return true;
+        }
+    }
+
+    public static boolean isRootShellOpen() {
+        if (rootShell == null) {
+            return false;
+        } else {
+            return true;
+        }
+    }
+
+    public static boolean isAnyShellOpen() {
+        if (rootShell != null) {
+            return true;
+        } else if (customShell != null) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void closeWriter(final Closeable writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void closeReader(final Closeable reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Schedule a task writing the commands the window takes, unless one is already scheduled.
+     * No thread is kept waiting for commands between writes.
+     */
+    private void scheduleWrite() {
+        if (!writing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            execute("Shell Input", input);
+        } catch (RuntimeException e) {
+            writing.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Write every command the window takes, each batch in one go so a burst of commands costs
+     * a single write and flush. Once the shell is closed and drained, it is told to exit.
+     */
+    private void writeCommands() throws IOException {
+        if (writeFailed || exitWritten) {
+            return;
+        }
+
+        StringBuilder batch = new StringBuilder();
+        long first;
+        while ((first = commands.pollWrite()) >= 0) {
+            long end = commands.getTail();
+            long now = System.nanoTime();
+            batch.setLength(0);
+            for (long seq = first; seq < end; seq++) {
+                Command next = commands.get(seq);
+                if (next == null) {
+                    continue;
+                }
+                String sentinel = next instanceof BinaryCommand
+                        ? ((BinaryCommand) next).getMarker() : token;
+                if (next.isCancelled()) {
+                    batch.append("echo ").append(sentinel).append(' ').append(seq)
+                            .append(" -1\n");
+                } else {
+                    /* Only commands which really run count as written */
+                    next.writtenAt = now;
+                    /* Run in a subshell of its own so it can be killed alone */
+                    batch.append("(:\n").append(next.getCommand()).append("\n) &\n");
+                    batch.append("echo ").append(pidToken).append(' ').append(seq)
+                            .append(" $! >&2\n");
+                    batch.append("wait $!\n");
+                    batch.append("echo ").append(sentinel).append(' ').append(seq)
+                            .append(" $?\n");
+                }
+                batch.append("echo ").append(token).append(' ').append(seq).append(" >&2\n");
+            }
+            write(batch.toString());
+        }
+
+        /* The input stays open until the output is read, a command may still be cancelled */
+        if (commands.isDrained()) {
+            exitWritten = true;
+            write("\nexit 0\n");
+            ShellUtils.Log("Closing shell");
+        }
+    }
+
+    private void readOutput() throws IOException, InterruptedException {
+        Command command = null;
+        long read = commands.getHead();
+        while (true) {
+            if (command == null) {
+                command = commands.awaitRead(read);
+                if (command == null) {
+                    break;
+                }
+            }
+
+            if (command instanceof BinaryCommand) {
+                if (!readBinary((BinaryCommand) command, read)) {
+                    break;
+                }
+                command = null;
+                read++;
+                continue;
+            }
+
+            int length = inputStream.fillLine();
+            if (length < 0) {
+                break;
+            }
+
+            int pos = inputStream.indexOf(TOKEN_BYTES);
+            if (pos > 0) {
+                command.outputLines++;
+                command.outputBytes += pos;
+                command.onUpdate(command.getID(), inputStream.decode(0, pos));
+            }
+            if (pos >= 0) {
+                inputStream.seek(pos + TOKEN_BYTES.length);
+                long id = inputStream.nextNumber();
+                if (id == read) {
+                    long exitCode = inputStream.nextNumber();
+                    finishOutput(command, read, exitCode == Long.MIN_VALUE ? -1 : (int) exitCode);
+                    read++;
+                    command = null;
+                    continue;
+                }
+            }
+            command.outputLines++;
+            command.outputBytes += length - Math.max(pos, 0) + 1;
+            command.onUpdate(command.getID(), inputStream.decode(Math.max(pos, 0), length));
+        }
+        ShellUtils.Log("Read all output");
+        /* Nothing is left to cancel, the end of the input lets the dispatcher loop exit */
+        closeInput();
+        proc.waitFor();
+        proc.destroy();
+        ShellUtils.Log("Shell destroyed");
+
+        close = true;
+        List<Command> unfinished = commands.abort();
+        errorsDone.await(shellTimeout, TimeUnit.MILLISECONDS);
+
+        for (Command leftover : unfinished) {
+            if (!leftover.isFinished()) {
+                leftover.terminate("Unexpected Termination.");
+            }
+        }
+    }
+
+    /**
+     * Copy the output of a binary command to its sink.
+     *
+     * @return false if the shell terminated before the command finished.
+     */
+    private boolean readBinary(BinaryCommand command, long read) throws IOException {
+        try {
+            long bytesRead = inputStream.copyUntil(command.getMarkerBytes(), command.getSink());
+            command.setBytesRead(bytesRead);
+            command.outputBytes = bytesRead;
+        } catch (EOFException e) {
+            return false;
+        }
+
+        if (inputStream.fillLine() < 0) {
+            return false;
+        }
+        inputStream.seek(0);
+        inputStream.nextNumber();
+        long exitCode = inputStream.nextNumber();
+
+        finishOutput(command, read, exitCode == Long.MIN_VALUE ? -1 : (int) exitCode);
+        return true;
+    }
+
+    /**
+     * Read the standard error of the shell and hand each line to the command it belongs to.
+     * <p>
+     * The error stream is drained all the time, so a command writing a lot to it never stalls.
+     * A sentinel written to the error stream after each command tells where its errors end.
+     * </p>
+     */
+    private void readError() throws IOException, InterruptedException {
+        Command command = null;
+        long read = commands.getHead();
+        while (true) {
+            if (command == null) {
+                command = commands.awaitRead(read);
+                if (command == null) {
+                    break;
+                }
+            }
+
+            int length = errorStream.fillLine();
+            if (length < 0) {
+                break;
+            }
+
+            int pidPos = errorStream.indexOf(PID_TOKEN_BYTES);
+            if (pidPos >= 0) {
+                errorStream.seek(pidPos + PID_TOKEN_BYTES.length);
+                if (errorStream.nextNumber() == read) {
+                    if (pidPos > 0) {
+                        command.onError(command.getID(), errorStream.decode(0, pidPos));
+                    }
+                    command.setPid(errorStream.nextNumber());
+                    continue;
+                }
+            }
+
+            int pos = errorStream.indexOf(TOKEN_BYTES);
+            if (pos > 0) {
+                command.onError(command.getID(), errorStream.decode(0, pos));
+            }
+            if (pos >= 0) {
+                errorStream.seek(pos + TOKEN_BYTES.length);
+                if (errorStream.nextNumber() == read) {
+                    finishError(command, read);
+                    read++;
+                    command = null;
+                    continue;
+                }
+            }
+            command.onError(command.getID(), errorStream.decode(Math.max(pos, 0), length));
+        }
+        ShellUtils.Log("Read all errors");
+    }
+
+    private void finishOutput(Command command, long seq, int exitCode) {
+        boolean finished;
+        synchronized (command) {
+            command.outputDone = true;
+            command.pendingExitCode = exitCode;
+            finished = command.errorDone;
+        }
+        if (finished) {
+            finish(command, seq);
+        }
+    }
+
+    private void finishError(Command command, long seq) {
+        boolean finished;
+        synchronized (command) {
+            command.errorDone = true;
+            finished = command.outputDone;
+        }
+        if (finished) {
+            finish(command, seq);
+        }
+    }
+
+    /**
+     * Both streams of the command have reached their sentinel.
+     */
+    private void finish(Command command, long seq) {
+        commands.release(seq);
+        if (commands.needsRefill()) {
+            scheduleWrite();
+        }
+        command.setExitCode(command.pendingExitCode);
+
+        ShellListener current = listener;
+        if (current != null) {
+            current.onCommandFinished(command, command.getQueueTime(),
+                    command.getExecutionTime(), command.outputLines, command.outputBytes,
+                    command.getExitCode());
+        }
+    }
+
+    public Command add(Command command) throws IOException {
+        if (close) {
+            throw new IllegalStateException("Unable to add commands to a closed shell");
+        }
+        command.attach(this);
+        command.queuedAt = System.nanoTime();
+        commands.put(command);
+        scheduleWrite();
+
+        ShellListener current = listener;
+        if (current != null) {
+            current.onCommandQueued(command, commands.size());
+        }
+
+        return command;
+    }
+
+    /**
+     * Add a batch of commands. The batch is queued at once and written to the shell with a
+     * single write, so the commands pipeline through the shell.
+     *
+     * @param commands the commands.
+     * @return the commands themselves.
+     */
+    public List<Command> addAll(List<Command> commands) throws IOException {
+        if (close) {
+            throw new IllegalStateException("Unable to add commands to a closed shell");
+        }
+        long now = System.nanoTime();
+        for (Command command : commands) {
+            command.attach(this);
+            command.queuedAt = now;
+        }
+        this.commands.putAll(commands);
+        scheduleWrite();
+
+        ShellListener current = listener;
+        if (current != null) {
+            int depth = this.commands.size();
+            for (Command command : commands) {
+                current.onCommandQueued(command, depth);
+            }
+        }
+
+        return commands;
+    }
+
+    /**
+     * Run commands without waiting for them.
+     * <p>
+     * The returned future is completed by the output thread of this shell with the output of
+     * the commands as a custom message, and their standard error as the error message.
+     * </p>
+     *
+     * @param commands the command strings.
+     * @return the pending result.
+     */
+    public ResultFuture submit(String... commands) throws IOException {
+        final ResultFuture future = new ResultFuture();
+        final List<String> output = new ArrayList<>();
+        final List<String> error = new ArrayList<>();
+        Command command = new Command(commands) {
+
+            @Override
+            public void onUpdate(int id, String message) {
+                output.add(message);
+            }
+
+            @Override
+            public void onError(int id, String message) {
+                error.add(message);
+            }
+
+            @Override
+            public void onFinished(int id) {
+                future.set(Result.newBuilder().setCustomOutput(output).setErrorOutput(error)
+                        .setCommand(this).build());
+            }
+
+        };
+        future.setCommand(command);
+        add(command);
+
+        return future;
+    }
+
+    public void close() throws IOException {
+        if (this == rootShell) {
+            rootShell = null;
+        }
+        if (this == customShell) {
+            customShell = null;
+        }
+        this.close = true;
+        commands.close();
+        scheduleWrite();
+    }
+
+    /**
+     * Kill a running command and its child processes. The kill is written as a control line,
+     * which the dispatcher loop of this shell handles while the shell waits for the command.
+     *
+     * @param pid the process id of the command.
+     */
+    void kill(final long pid) {
+        execute("Shell Cancel", new Runnable() {
+            public void run() {
+                try {
+                    write(controlToken + " " + pid + "\n");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Write to the shell. Commands and control lines are written by different threads, each
+     * write goes in one piece. Once the output is read to the end the input is closed, and
+     * nothing is written anymore.
+     */
+    private void write(String text) throws IOException {
+        byte[] bytes = text.getBytes("UTF-8");
+        synchronized (outputStream) {
+            if (inputClosed) {
+                return;
+            }
+            outputStream.write(bytes);
+            outputStream.flush();
+        }
+    }
+
+    private void closeInput() {
+        synchronized (outputStream) {
+            inputClosed = true;
+            closeWriter(outputStream);
+        }
+    }
+
+    /**
+     * Get the number of unfinished commands. Finished commands are dropped from the queue.
+     *
+     * @return the number of commands in the queue.
+     */
+    public int countCommands() {
+        return commands.size();
+    }
+
+    /**
+     * Get the queue depth of this shell, the same as {@link #countCommands()}.
+     *
+     * @return the number of commands added but not finished yet.
+     */
+    public int getPendingCount() {
+        return countCommands();
+    }
+
+    /**
+     * Get the number of commands which would run before a command of the given priority.
+     *
+     * @param priority the priority.
+     * @return the queue depth ahead of such a command.
+     */
+    public int countAhead(Command.Priority priority) {
+        return commands.countAhead(priority);
+    }
+
+    public boolean isClosed() {
+        return close;
+    }
+
+    public void waitFor() throws IOException, InterruptedException {
+        List<Command> unfinished = commands.snapshot();
+        close();
+        for (Command command : unfinished) {
+            command.waitForFinish();
+        }
+    }
+
+    protected static class Worker implements Runnable {
+
+        public volatile int exit = -911;
+        public Shell shell;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Worker(Shell shell) {
+            this.shell = shell;
+        }
+
+        /**
+         * Wait for the handshake to finish.
+         *
+         * @param timeout the timeout in milliseconds.
+         */
+        void await(long timeout) throws InterruptedException {
+            done.await(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        public void run() {
+
+            try {
+                shell.write(DISPATCHER);
+
+                while (true) {
+                    String line = shell.inputStream.readLine();
+                    if (line == null) {
+                        throw new EOFException();
+                    }
+                    if ("".equals(line)) {
+                        continue;
+                    }
+                    if ("Started".equals(line)) {
+                        this.exit = 1;
+                        break;
+                    }
+                    Shell.error = "unkown error occured.";
+                }
+            } catch (IOException e) {
+                exit = -42;
+                if (e.getMessage() != null) {
+                    Shell.error = e.getMessage();
+                } else {
+                    Shell.error = "RootAccess denied?.";
+                }
+            } finally {
+                done.countDown();
+            }
+
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.exception.PermissionException;
+import com.chrisplus.rootmanager.metrics.ShellListener;
+import com.chrisplus.rootmanager.utils.Logger;
+import com.chrisplus.rootmanager.utils.ShellUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A pool of live shells of the same kind.
+ * <p>
+ * Commands added to the pool are dispatched to the shell with the least pending commands. A new
+ * shell is spawned only when every live shell is busy and the pool has not reached its maximum
+ * size, so a pool of size 1 behaves exactly like a single shell.
+ * </p>
+ * <p>
+ * Spawning a shell runs <i>su</i> and waits for its handshake, which is never done while the
+ * pool is locked. A command arriving while another caller spawns a shell goes to a live shell
+ * if there is one, and only waits for the spawn if there is none.
+ * </p>
+ */
+public class ShellPool {
+
+    private final static String TAG = ShellPool.class.getSimpleName();
+
+    private static final String ROOT_SHELL = "su";
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    private static ShellPool rootPool = null;
+    private static int rootPoolMinSize = 1;
+    private static int rootPoolMaxSize = 1;
+
+    private final String shellCmd;
+    private final int minSize;
+    private final int maxSize;
+    private final int timeout;
+
+    private final List<Shell> shells = new ArrayList<>();
+    private boolean close = false;
+
+    /* The number of shells being spawned outside the lock */
+    private int spawning = 0;
+
+    public ShellPool(String shellCmd, int minSize, int maxSize) {
+        this(shellCmd, minSize, maxSize, DEFAULT_TIMEOUT);
+    }
+
+    public ShellPool(String shellCmd, int minSize, int maxSize, int timeout) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException(
+                    "Illegal pool size, min " + minSize + " max " + maxSize);
+        }
+        this.shellCmd = shellCmd;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Get the shared pool of root shells, the pool is created on the first call.
+     *
+     * @return the root shell pool.
+     */
+    public static synchronized ShellPool getRootPool() {
+        if (rootPool == null) {
+            rootPool = new ShellPool(ROOT_SHELL, rootPoolMinSize, rootPoolMaxSize);
+        }
+        return rootPool;
+    }
+
+    /**
+     * Set the size of the shared root shell pool. The current pool, if any, is closed after its
+     * pending commands finish and a new pool with the given size is created on demand.
+     *
+     * @param minSize the number of root shells kept alive once the pool is started.
+     * @param maxSize the maximum number of concurrent root shells.
+     */
+    public static synchronized void setRootPoolSize(int minSize, int maxSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException(
+                    "Illegal pool size, min " + minSize + " max " + maxSize);
+        }
+        rootPoolMinSize = minSize;
+        rootPoolMaxSize = maxSize;
+        closeRootPool();
+    }
+
+    public static synchronized void closeRootPool() {
+        if (rootPool == null) {
+            return;
+        }
+        rootPool.close();
+        rootPool = null;
+    }
+
+    /**
+     * Spawn shells until the pool holds at least its minimum size.
+     */
+    public void start() throws IOException, TimeoutException, PermissionException {
+        int missing;
+        synchronized (this) {
+            prune();
+            missing = Math.max(0, minSize - shells.size() - spawning);
+            spawning += missing;
+        }
+        try {
+            while (missing > 0) {
+                missing--;
+                spawn();
+            }
+        } finally {
+            release(missing);
+        }
+    }
+
+    /**
+     * Start the shells of this pool in the background, so the first command does not pay for
+     * spawning them. At least one shell is started even if the minimum size is zero. Commands
+     * added meanwhile wait for the start in progress instead of spawning shells of their own.
+     */
+    public void prewarm() {
+        Shell.execute("Shell Prewarm", new Runnable() {
+            public void run() {
+                try {
+                    start();
+                    boolean empty;
+                    synchronized (ShellPool.this) {
+                        empty = !close && shells.isEmpty() && spawning == 0;
+                        if (empty) {
+                            spawning++;
+                        }
+                    }
+                    if (empty) {
+                        spawn();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (TimeoutException e) {
+                    e.printStackTrace();
+                } catch (PermissionException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Add a command to the shell of this pool where it runs first, given its priority.
+     *
+     * @param command the command to run.
+     * @return the command itself.
+     */
+    public Command add(Command command) throws IOException, TimeoutException,
+            PermissionException {
+        while (true) {
+            Shell shell = acquire(command.getPriority());
+            try {
+                return shell.add(command);
+            } catch (IllegalStateException e) {
+                retryIfClosed(shell, e);
+            }
+        }
+    }
+
+    /**
+     * Add a batch of commands to the least loaded shell of this pool. The whole batch goes to
+     * one shell so it is written with a single write.
+     *
+     * @param commands the commands to run.
+     * @return the commands themselves.
+     */
+    public List<Command> addAll(List<Command> commands) throws IOException, TimeoutException,
+            PermissionException {
+        Command.Priority best = Command.Priority.BULK;
+        for (Command command : commands) {
+            if (command.getPriority().compareTo(best) < 0) {
+                best = command.getPriority();
+            }
+        }
+        List<Command> rest = commands;
+        while (true) {
+            Shell shell = acquire(best);
+            try {
+                shell.addAll(rest);
+                return commands;
+            } catch (IllegalStateException e) {
+                retryIfClosed(shell, e);
+            }
+            /* A shell closed in the middle of a batch still runs the part it has taken */
+            List<Command> untaken = new ArrayList<>();
+            for (Command command : rest) {
+                if (!command.queued) {
+                    untaken.add(command);
+                }
+            }
+            if (untaken.isEmpty()) {
+                return commands;
+            }
+            rest = untaken;
+        }
+    }
+
+    /**
+     * Run commands in the least loaded shell without waiting for them.
+     *
+     * @param commands the command strings.
+     * @return the pending result.
+     * @see Shell#submit(String...)
+     */
+    public ResultFuture submit(String... commands) throws IOException, TimeoutException,
+            PermissionException {
+        while (true) {
+            Shell shell = acquire(Command.Priority.NORMAL);
+            try {
+                return shell.submit(commands);
+            } catch (IllegalStateException e) {
+                retryIfClosed(shell, e);
+            }
+        }
+    }
+
+    public synchronized int getSize() {
+        prune();
+        return shells.size();
+    }
+
+    /**
+     * Get the number of shells which are running at least one command.
+     *
+     * @return the busy shell count.
+     */
+    public synchronized int getBusyCount() {
+        prune();
+        int busy = 0;
+        for (Shell shell : shells) {
+            if (shell.getPendingCount() > 0) {
+                busy++;
+            }
+        }
+        return busy;
+    }
+
+    /**
+     * Get the number of commands which are pending in all shells of this pool.
+     *
+     * @return the total queue depth.
+     */
+    public synchronized int getPendingCount() {
+        prune();
+        int pending = 0;
+        for (Shell shell : shells) {
+            pending += shell.getPendingCount();
+        }
+        return pending;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void close() {
+        List<Shell> closing;
+        synchronized (this) {
+            close = true;
+            closing = new ArrayList<>(shells);
+            shells.clear();
+            notifyAll();
+        }
+        for (Shell shell : closing) {
+            try {
+                shell.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Pick the shell where a command of the given priority has the fewest commands ahead of it.
+     * If every shell has work ahead and the pool may grow, the caller spawns one more shell
+     * without holding the lock, so other callers are dispatched to the live shells meanwhile.
+     * If that spawn fails, the least loaded live shell is used instead.
+     */
+    private Shell acquire(Command.Priority priority) throws IOException, TimeoutException,
+            PermissionException {
+        while (true) {
+            Shell leastLoaded = null;
+            synchronized (this) {
+                if (close) {
+                    throw new IllegalStateException(
+                            "Unable to add commands to a closed shell pool");
+                }
+                prune();
+
+                int leastPending = Integer.MAX_VALUE;
+                for (Shell shell : shells) {
+                    int pending = shell.countAhead(priority);
+                    if (pending < leastPending) {
+                        leastLoaded = shell;
+                        leastPending = pending;
+                    }
+                }
+
+                boolean grow = shells.size() + spawning < maxSize;
+                if (leastLoaded != null && (leastPending == 0 || !grow)) {
+                    /* Top up to the minimum size without making this caller wait */
+                    for (int i = shells.size() + spawning; i < minSize; i++) {
+                        spawnInBackground();
+                    }
+                    reportDispatch();
+                    return leastLoaded;
+                }
+
+                if (!grow || (leastLoaded == null && spawning > 0)) {
+                    /* No live shell, wait for the ones being spawned */
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new TimeoutException();
+                    }
+                    continue;
+                }
+                spawning++;
+            }
+
+            Shell shell;
+            try {
+                shell = spawn();
+            } catch (IOException e) {
+                if (leastLoaded == null) {
+                    throw e;
+                }
+                e.printStackTrace();
+                shell = leastLoaded;
+            } catch (TimeoutException e) {
+                if (leastLoaded == null) {
+                    throw e;
+                }
+                e.printStackTrace();
+                shell = leastLoaded;
+            }
+            if (!shell.isClosed()) {
+                synchronized (this) {
+                    reportDispatch();
+                }
+                return shell;
+            }
+        }
+    }
+
+    private void reportDispatch() {
+        ShellListener listener = Shell.getListener();
+        if (listener != null) {
+            int busy = 0;
+            int pending = 0;
+            for (Shell shell : shells) {
+                int count = shell.getPendingCount();
+                if (count > 0) {
+                    busy++;
+                }
+                pending += count;
+            }
+            listener.onPoolDispatch(busy, shells.size(), pending);
+        }
+    }
+
+    /**
+     * Rethrow the failure to add to a shell unless the shell was closed meanwhile, i.e., because
+     * its process died, in which case the caller retries on another shell. A full queue is
+     * rethrown.
+     */
+    private static void retryIfClosed(Shell shell, IllegalStateException e) {
+        if (!shell.isClosed()) {
+            throw e;
+        }
+        ShellUtils.Log(TAG, "Shell closed while adding commands, retry on another shell");
+    }
+
+    private void spawnInBackground() {
+        spawning++;
+        Shell.execute("Shell Spawn", new Runnable() {
+            public void run() {
+                try {
+                    spawn();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (TimeoutException e) {
+                    e.printStackTrace();
+                } catch (PermissionException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Spawn a shell for a slot reserved in {@link #spawning}, without holding the lock.
+     */
+    private Shell spawn() throws IOException, TimeoutException, PermissionException {
+        ShellUtils.log(Logger.Level.DEBUG, TAG, "Spawning shell: %s", shellCmd);
+        Shell shell = null;
+        boolean closed;
+        try {
+            shell = Shell.spawn(shellCmd, timeout);
+        } finally {
+            synchronized (this) {
+                spawning--;
+                closed = close;
+                if (shell != null && !closed) {
+                    shells.add(shell);
+                }
+                notifyAll();
+            }
+        }
+        /* The pool was closed during the spawn */
+        if (closed) {
+            shell.close();
+        }
+        return shell;
+    }
+
+    private synchronized void release(int reserved) {
+        spawning -= reserved;
+        notifyAll();
+    }
+
+    private void prune() {
+        Iterator<Shell> iterator = shells.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isClosed()) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.chrisplus.rootmanager.container;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Share one execution among concurrent identical requests.
+ * <p>
+ * While a call for a key is running, further calls for the same key get the same
+ * {@link ResultFuture} instead of starting another execution. Once the future completes the key
+ * is forgotten, so results are never reused after the fact. Only use this for read-only commands,
+ * i.e., <i>"ps"</i> or <i>"id"</i>, and note that cancelling the shared future cancels it for
+ * every caller.
+ * </p>
+ */
+public class SingleFlight {
+
+    /**
+     * Start the execution for a key.
+     */
+    public interface Call {
+
+        /**
+         * Start the execution, which must complete the given future, also on failure.
+         *
+         * @param future the future shared by every caller.
+         */
+        void start(ResultFuture future);
+    }
+
+    private final ConcurrentMap<String, ResultFuture> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Join the running execution for the key, or start a new one.
+     *
+     * @param key  the key, i.e., the command text.
+     * @param call starts the execution if none is running.
+     * @return the shared future.
+     */
+    public ResultFuture run(final String key, Call call) {
+        ResultFuture running = inFlight.get(key);
+        if (running != null) {
+            return running;
+        }
+
+        final ResultFuture future = new ResultFuture();
+        running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+
+        future.addCallback(new ResultFuture.Callback() {
+            public void onResult(Result result) {
+                inFlight.remove(key, future);
+            }
+        });
+        call.start(future);
+        return future;
+    }
+
+    /**
+     * Get the number of keys being executed.
+     *
+     * @return the in-flight count.
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,278 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.Constants;
+import com.chrisplus.rootmanager.utils.Logger;
+import com.chrisplus.rootmanager.utils.ShellUtils;
+
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A command fed with data on its standard input, i.e., <i>"pm install -S &lt;size&gt;"</i>
+ * reading an APK from the storage of the app, so no copy readable by <i>"pm"</i> is needed.
+ * <p>
+ * The shells of the engine read their commands from the standard input, so this command runs
+ * in a root process of its own started by <i>"su -c"</i>. Exactly the given number of bytes is
+ * copied to it, then its input is closed. The standard output and error are read together as
+ * lines while the input is written, so a command writing a lot never blocks its own input.
+ * </p>
+ */
+public class StdinCommand {
+
+    private static final String TAG = StdinCommand.class.getSimpleName();
+
+    private static final String ROOT_SHELL = "su";
+
+    /* One thread destroys the commands which time out, none waits for a running command */
+    private static final Timer WATCHDOG = new Timer("Stdin Command Timeout", true);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final String shell;
+
+    private final String command;
+
+    private final int timeout;
+
+    private final List<String> output = new ArrayList<>();
+
+    private int exitCode = -1;
+
+    public StdinCommand(String command) {
+        this(Constants.COMMAND_TIMEOUT, command);
+    }
+
+    public StdinCommand(int timeout, String command) {
+        this(ROOT_SHELL, timeout, command);
+    }
+
+    StdinCommand(String shell, int timeout, String command) {
+        this.shell = shell;
+        this.command = command;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Run the command with the given data on its standard input.
+     *
+     * @param in   the data.
+     * @param size the number of bytes to copy from the stream.
+     * @return the exit code.
+     */
+    public int run(final InputStream in, final long size) throws IOException, InterruptedException,
+            TimeoutException {
+        return run(new Feeder() {
+            public void feed(OutputStream out) throws IOException {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                long remaining = size;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("Stream ended " + remaining + " bytes early");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the command with the rest of a file on its standard input, from the current position
+     * of the channel to its end. The file is transferred by the channel, so the data does not
+     * pass through a buffer of the caller.
+     *
+     * @param channel the file.
+     * @return the exit code.
+     */
+    public int run(final FileChannel channel) throws IOException, InterruptedException,
+            TimeoutException {
+        return run(new Feeder() {
+            public void feed(OutputStream out) throws IOException {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = channel.position();
+                long end = channel.size();
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, target);
+                }
+                channel.position(position);
+            }
+        });
+    }
+
+    public synchronized int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Get the lines the command wrote to the standard output and error.
+     *
+     * @return the lines.
+     */
+    public synchronized List<String> getOutputLines() {
+        return new ArrayList<>(output);
+    }
+
+    private interface Feeder {
+
+        void feed(OutputStream out) throws IOException;
+    }
+
+    /**
+     * The input of the command. Remembers a failed write, so a command which exits before it
+     * has read all data is told apart from a failure to read the data.
+     */
+    private static class Input extends FilterOutputStream {
+
+        private boolean failed = false;
+
+        Input(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+
+    private int run(Feeder feeder) throws IOException, InterruptedException, TimeoutException {
+        if (ShellUtils.isLoggable(Logger.Level.DEBUG)) {
+            ShellUtils.Log(TAG, "Starting stdin command: " + ShellUtils.redact(command));
+        }
+        ProcessBuilder builder = new ProcessBuilder(shell, "-c", command);
+        builder.redirectErrorStream(true);
+        final Process proc = builder.start();
+
+        final Object lock = new Object();
+        final boolean[] finished = {false};
+        TimerTask watchdog = new TimerTask() {
+            public void run() {
+                synchronized (lock) {
+                    if (!finished[0]) {
+                        finished[0] = true;
+                        proc.destroy();
+                    }
+                }
+            }
+        };
+        WATCHDOG.schedule(watchdog, timeout);
+
+        final IOException[] readFailure = {null};
+        final CountDownLatch outputRead = new CountDownLatch(1);
+        Shell.execute("Stdin Command Output", new Runnable() {
+            public void run() {
+                try {
+                    readOutput(proc.getInputStream());
+                } catch (IOException e) {
+                    readFailure[0] = e;
+                } finally {
+                    outputRead.countDown();
+                }
+            }
+        });
+
+        try {
+            Input stdin = new Input(proc.getOutputStream());
+            try {
+                feeder.feed(stdin);
+            } catch (IOException e) {
+                if (!stdin.failed) {
+                    /* The data could not be read, the command must not see a partial input */
+                    proc.destroy();
+                    throw e;
+                }
+                /* The command exited early, its output tells why */
+                ShellUtils.log(Logger.Level.WARN, TAG, "Input not fully written: %s",
+                        e.getMessage());
+            } finally {
+                try {
+                    stdin.close();
+                } catch (IOException e) {
+                    ShellUtils.log(Logger.Level.WARN, TAG, "Unable to close the input: %s",
+                            e.getMessage());
+                }
+            }
+
+            int code = proc.waitFor();
+            /* A child left behind by a destroyed command may hold the output open */
+            synchronized (lock) {
+                if (finished[0]) {
+                    throw new TimeoutException("Stdin command timed out");
+                }
+            }
+            outputRead.await();
+            synchronized (lock) {
+                if (finished[0]) {
+                    throw new TimeoutException("Stdin command timed out");
+                }
+                finished[0] = true;
+            }
+            if (readFailure[0] != null) {
+                throw readFailure[0];
+            }
+            synchronized (this) {
+                exitCode = code;
+            }
+            return code;
+        } finally {
+            watchdog.cancel();
+            synchronized (lock) {
+                finished[0] = true;
+            }
+            proc.destroy();
+        }
+    }
+
+    private void readOutput(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (this) {
+                    output.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.Constants;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A command whose output is consumed line by line while it is still running.
+ * <p>
+ * Lines are handed over through a bounded buffer. When the buffer is full the output thread of
+ * the shell waits for the consumer, so the command itself is throttled by the pipe instead of
+ * its output piling up in memory. Because a shell runs its commands in order, a slow consumer
+ * also delays the following commands of the same shell; long running streams are best run in a
+ * shell of their own.
+ * </p>
+ */
+public class StreamCommand extends Command implements Closeable {
+
+    /* Marks the end of output, compared by identity */
+    private static final String END = new String("");
+
+    private static final long OFFER_INTERVAL = 100;
+
+    private final BlockingQueue<String> lines;
+
+    private volatile boolean close = false;
+
+    /* Set once the command has finished, even if END did not fit into a full buffer */
+    private volatile boolean ended = false;
+
+    private volatile boolean endOfStream = false;
+
+    public StreamCommand(String... commands) {
+        this(Constants.STREAM_BUFFER_LINES, commands);
+    }
+
+    public StreamCommand(int bufferLines, String... commands) {
+        super(commands);
+        lines = new ArrayBlockingQueue<>(bufferLines);
+    }
+
+    @Override
+    public void onUpdate(int id, String message) {
+        offer(message);
+    }
+
+    /**
+     * Called with the monitor of the command held, so the end of output is never waited for. If
+     * the buffer is full, the consumer notices the end once it has drained the buffer.
+     */
+    @Override
+    public void onFinished(int id) {
+        ended = true;
+        lines.offer(END);
+    }
+
+    /**
+     * Get the next line of output, waiting for it if necessary.
+     *
+     * @return the line, or null once the command has finished and all lines have been read.
+     */
+    public String nextLine() throws InterruptedException {
+        while (true) {
+            if (endOfStream || close) {
+                return null;
+            }
+            String line = lines.poll(OFFER_INTERVAL, TimeUnit.MILLISECONDS);
+            if (line != null || checkEnded()) {
+                return unwrap(line);
+            }
+        }
+    }
+
+    /**
+     * Get the next line of output, waiting up to the given time for it.
+     *
+     * @return the line, or null if the command has finished or no line arrived in time. Use
+     * {@link #isEndOfStream()} to tell them apart.
+     */
+    public String nextLine(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            if (endOfStream || close) {
+                return null;
+            }
+            long remaining = deadline - System.nanoTime();
+            String line = lines.poll(Math.max(0, Math.min(remaining,
+                    TimeUnit.MILLISECONDS.toNanos(OFFER_INTERVAL))), TimeUnit.NANOSECONDS);
+            if (line != null || checkEnded()) {
+                return unwrap(line);
+            }
+            if (remaining <= 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Check if all output has been read.
+     *
+     * @return true once {@link #nextLine()} has returned the end of output.
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * Stop consuming the output and cancel the command. Remaining output of the command is
+     * discarded so the shell can go on with the next command.
+     */
+    @Override
+    public void close() {
+        close = true;
+        lines.clear();
+        cancel();
+    }
+
+    private boolean checkEnded() {
+        return ended && lines.isEmpty();
+    }
+
+    private String unwrap(String line) {
+        if (line == null || line == END) {
+            endOfStream = true;
+            return null;
+        }
+        return line;
+    }
+
+    private void offer(String line) {
+        try {
+            while (!close) {
+                if (lines.offer(line, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.chrisplus.rootmanager.container;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keep only the last lines of output in a ring buffer of fixed size, for callers which only
+ * need the tail of a long output, i.e., the last lines of <i>"logcat -d"</i>.
+ */
+public class TailBuffer implements OutputSink {
+
+    private final String[] ring;
+
+    private long count;
+
+    public TailBuffer(int maxLines) {
+        if (maxLines < 1) {
+            throw new IllegalArgumentException("Illegal tail size " + maxLines);
+        }
+        ring = new String[maxLines];
+    }
+
+    @Override
+    public synchronized void addLine(String line) {
+        ring[(int) (count % ring.length)] = line;
+        count++;
+    }
+
+    @Override
+    public void finish() {
+
+    }
+
+    /**
+     * Get the kept lines.
+     *
+     * @return the last lines, oldest first.
+     */
+    public synchronized List<String> getLines() {
+        int size = (int) Math.min(count, ring.length);
+        List<String> lines = new ArrayList<>(size);
+        for (long i = count - size; i < count; i++) {
+            lines.add(ring[(int) (i % ring.length)]);
+        }
+        return lines;
+    }
+
+    /**
+     * Get the number of lines added, including the dropped ones.
+     *
+     * @return the line count.
+     */
+    public synchronized long getLineCount() {
+        return count;
+    }
+}
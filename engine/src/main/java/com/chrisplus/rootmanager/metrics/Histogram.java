@@ -0,0 +1,127 @@
+package com.chrisplus.rootmanager.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of non-negative long values with bounded relative error.
+ * <p>
+ * Like an HDR histogram, values are counted in buckets whose width grows with the magnitude of
+ * the value: values below 64 are exact, larger values are split into 32 sub-buckets per power of
+ * two, which keeps the relative error below about 3% over the whole long range in a fixed
+ * footprint of 1920 counters. Recording is lock free and allocation free.
+ * </p>
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR_COUNT = SUB_COUNT * 2;
+    private static final int BUCKET_COUNT = LINEAR_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Record a value, negative values are recorded as zero.
+     *
+     * @param value the value.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current = min.get();
+        while (value < current && !min.compareAndSet(current, value)) {
+            current = min.get();
+        }
+        current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMin() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return count.get() == 0 ? 0 : max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Get the value at a percentile.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the highest value of the bucket holding the percentile, capped at the maximum
+     * recorded value, or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        double clamped = Math.min(Math.max(percentile, 0), 100);
+        long rank = Math.max(1, (long) Math.ceil(clamped / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d min=%d p50=%d p90=%d p99=%d max=%d mean=%.1f",
+                getCount(), getMin(), getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getMax(), getMean());
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_COUNT;
+        return LINEAR_COUNT + (shift - 1) * SUB_COUNT + sub;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+        int shift = (index - LINEAR_COUNT) / SUB_COUNT + 1;
+        long sub = (index - LINEAR_COUNT) % SUB_COUNT + SUB_COUNT;
+        long upper = ((sub + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
@@ -0,0 +1,61 @@
+package com.chrisplus.rootmanager.metrics;
+
+import com.chrisplus.rootmanager.container.Command;
+
+/**
+ * Receives events about shells and commands, i.e., to collect latency metrics.
+ * <p>
+ * Register a listener by {@link com.chrisplus.rootmanager.container.Shell#setListener}. Events
+ * are reported on the threads doing the work, including the I/O threads of the shells, so
+ * implementations must be thread safe and return quickly. All durations are in nanoseconds.
+ * </p>
+ */
+public interface ShellListener {
+
+    /**
+     * A shell has been started and passed its handshake.
+     *
+     * @param shellCmd the command starting the shell, i.e., <i>"su"</i>.
+     * @param duration the time spent starting the shell.
+     */
+    void onShellStarted(String shellCmd, long duration);
+
+    /**
+     * A shell could not be started.
+     *
+     * @param shellCmd the command starting the shell.
+     * @param duration the time spent until the failure.
+     * @param error    the cause.
+     */
+    void onShellFailed(String shellCmd, long duration, Throwable error);
+
+    /**
+     * A command has been added to a shell.
+     *
+     * @param command    the command.
+     * @param queueDepth the number of unfinished commands in the shell, including this one.
+     */
+    void onCommandQueued(Command command, int queueDepth);
+
+    /**
+     * A command has finished.
+     *
+     * @param command     the command.
+     * @param queueTime   the time from being added until being written to the shell.
+     * @param execTime    the time from being written to the shell until finishing.
+     * @param outputLines the number of lines written to the standard output.
+     * @param outputBytes the number of bytes written to the standard output.
+     * @param exitCode    the exit code.
+     */
+    void onCommandFinished(Command command, long queueTime, long execTime, long outputLines,
+            long outputBytes, int exitCode);
+
+    /**
+     * A command has been dispatched by a shell pool.
+     *
+     * @param busy    the number of shells running at least one command.
+     * @param size    the number of live shells.
+     * @param pending the number of unfinished commands in all shells.
+     */
+    void onPoolDispatch(int busy, int size, int pending);
+}
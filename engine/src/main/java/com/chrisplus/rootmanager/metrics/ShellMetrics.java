@@ -0,0 +1,183 @@
+package com.chrisplus.rootmanager.metrics;
+
+import com.chrisplus.rootmanager.container.Command;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ShellListener} keeping histograms of shell and command latencies.
+ * <p>
+ * Durations are recorded in microseconds. Execution times are also kept per program, i.e.,
+ * <i>"pm"</i> or <i>"ls"</i>, so slow commands can be told apart from a slow shell. Register it by
+ * {@link com.chrisplus.rootmanager.container.Shell#setListener}.
+ * </p>
+ */
+public class ShellMetrics implements ShellListener {
+
+    private final Histogram shellStart = new Histogram();
+    private final Histogram queueWait = new Histogram();
+    private final Histogram execution = new Histogram();
+    private final Histogram outputSize = new Histogram();
+    private final Histogram queueDepth = new Histogram();
+    private final ConcurrentMap<String, Histogram> programs = new ConcurrentHashMap<>();
+
+    private final AtomicLong shellFailures = new AtomicLong();
+    private final AtomicLong commandsFailed = new AtomicLong();
+    private final AtomicLong outputLines = new AtomicLong();
+
+    private volatile int busyShells;
+    private volatile int poolSize;
+    private volatile int poolPending;
+
+    @Override
+    public void onShellStarted(String shellCmd, long duration) {
+        shellStart.record(toMicros(duration));
+    }
+
+    @Override
+    public void onShellFailed(String shellCmd, long duration, Throwable error) {
+        shellFailures.incrementAndGet();
+    }
+
+    @Override
+    public void onCommandQueued(Command command, int queueDepth) {
+        this.queueDepth.record(queueDepth);
+    }
+
+    @Override
+    public void onCommandFinished(Command command, long queueTime, long execTime,
+            long outputLines, long outputBytes, int exitCode) {
+        queueWait.record(toMicros(queueTime));
+        execution.record(toMicros(execTime));
+        outputSize.record(outputBytes);
+        this.outputLines.addAndGet(outputLines);
+        if (exitCode != 0) {
+            commandsFailed.incrementAndGet();
+        }
+
+        String program = command.getProgram();
+        Histogram histogram = programs.get(program);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = programs.putIfAbsent(program, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(toMicros(execTime));
+    }
+
+    @Override
+    public void onPoolDispatch(int busy, int size, int pending) {
+        busyShells = busy;
+        poolSize = size;
+        poolPending = pending;
+    }
+
+    /**
+     * Get the time spent starting shells, in microseconds.
+     */
+    public Histogram getShellStart() {
+        return shellStart;
+    }
+
+    /**
+     * Get the time commands waited before being written to a shell, in microseconds.
+     */
+    public Histogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Get the time from writing commands to a shell until they finished, in microseconds.
+     */
+    public Histogram getExecution() {
+        return execution;
+    }
+
+    /**
+     * Get the execution time of the commands running the given program, in microseconds.
+     *
+     * @param program the program name, see {@link Command#getProgram()}.
+     * @return the histogram, or null if no such command has finished.
+     */
+    public Histogram getExecution(String program) {
+        return programs.get(program);
+    }
+
+    public Map<String, Histogram> getExecutionByProgram() {
+        return programs;
+    }
+
+    /**
+     * Get the size of the standard output of commands, in bytes.
+     */
+    public Histogram getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Get the number of unfinished commands of a shell when a command is added.
+     */
+    public Histogram getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getShellFailures() {
+        return shellFailures.get();
+    }
+
+    /**
+     * Get the number of commands which finished with a non-zero exit code.
+     */
+    public long getCommandsFailed() {
+        return commandsFailed.get();
+    }
+
+    public long getOutputLines() {
+        return outputLines.get();
+    }
+
+    /**
+     * Get the share of busy shells in the pool at the last dispatch.
+     *
+     * @return the utilization from 0 to 1.
+     */
+    public double getPoolUtilization() {
+        int size = poolSize;
+        return size == 0 ? 0 : (double) busyShells / size;
+    }
+
+    public int getPoolPending() {
+        return poolPending;
+    }
+
+    public void reset() {
+        shellStart.reset();
+        queueWait.reset();
+        execution.reset();
+        outputSize.reset();
+        queueDepth.reset();
+        programs.clear();
+        shellFailures.set(0);
+        commandsFailed.set(0);
+        outputLines.set(0);
+        busyShells = 0;
+        poolSize = 0;
+        poolPending = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "shellStart[" + shellStart + "] queueWait[" + queueWait + "] execution["
+                + execution + "] outputSize[" + outputSize + "] shellFailures=" + shellFailures
+                + " commandsFailed=" + commandsFailed;
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos / 1000;
+    }
+}
@@ -0,0 +1,25 @@
+package com.chrisplus.rootmanager.utils;
+
+/**
+ * The destination of the logs of the shell engine, i.e., logcat on Android.
+ *
+ * @see ShellUtils#setLogger(Logger)
+ */
+public interface Logger {
+
+    /**
+     * The log levels, in increasing severity.
+     */
+    enum Level {
+        VERBOSE, DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * Output a log. Only called for levels enabled by {@link ShellUtils#setLogLevel(Level)}.
+     *
+     * @param level   the level.
+     * @param tag     the log tag.
+     * @param message the message.
+     */
+    void log(Level level, String tag, String message);
+}
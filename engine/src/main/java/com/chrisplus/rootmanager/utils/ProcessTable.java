@@ -0,0 +1,528 @@
+package com.chrisplus.rootmanager.utils;
+
+import com.chrisplus.rootmanager.container.Command;
+import com.chrisplus.rootmanager.container.ShellPool;
+import com.chrisplus.rootmanager.exception.PermissionException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A table of the running processes, read from <i>/proc</i> directly instead of running
+ * <i>"ps"</i> in a shell.
+ * <p>
+ * Each {@link #refresh()} reads <i>/proc/&lt;pid&gt;/stat</i>, <i>status</i> and
+ * <i>cmdline</i> into a reused byte buffer and parses them into arrays which are reused as
+ * well. Entries this process can not read, i.e., with <i>/proc</i> mounted with
+ * <i>hidepid</i>, are read through the root shell instead, all of them in one command.
+ * </p>
+ * <p>
+ * The name of a process is the first word of its command line, i.e., the package name of an
+ * app, or the kernel name for kernel threads.
+ * </p>
+ */
+public class ProcessTable {
+
+    private static final String PROC = "/proc";
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final File procDir;
+
+    private final boolean rootFallback;
+
+    private byte[] buffer = new byte[4096];
+
+    private int size;
+
+    private int[] pids = new int[INITIAL_CAPACITY];
+
+    private int[] parentPids = new int[INITIAL_CAPACITY];
+
+    private int[] uids = new int[INITIAL_CAPACITY];
+
+    private long[] startTimes = new long[INITIAL_CAPACITY];
+
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    private long refreshedAt;
+
+    public ProcessTable() {
+        this(new File(PROC), true);
+    }
+
+    /**
+     * @param procDir      the proc file system.
+     * @param rootFallback true to read unreadable entries through the root shell.
+     */
+    public ProcessTable(File procDir, boolean rootFallback) {
+        this.procDir = procDir;
+        this.rootFallback = rootFallback;
+    }
+
+    /**
+     * Read the process table again.
+     *
+     * @return true if every process could be read, false if some are missing because the root
+     * shell was not available.
+     */
+    public synchronized boolean refresh() {
+        size = 0;
+        String[] entries = procDir.list();
+        List<String> unreadable = new ArrayList<>();
+        if (entries != null) {
+            for (String entry : entries) {
+                int pid = parsePid(entry);
+                /* A process which exited meanwhile is gone, not unreadable */
+                if (pid > 0 && !readProcess(pid) && new File(procDir, entry).exists()) {
+                    unreadable.add(entry);
+                }
+            }
+        }
+
+        sortByPid();
+
+        boolean complete = true;
+        /* Without pid 1 the listing itself is restricted, so the root shell has to list it */
+        boolean restricted = indexOf(1) < 0;
+        if (rootFallback && (restricted || !unreadable.isEmpty())) {
+            complete = readAsRoot(restricted ? null : unreadable);
+        } else if (restricted) {
+            complete = false;
+        }
+        sortByPid();
+        refreshedAt = System.nanoTime();
+        return complete;
+    }
+
+    /**
+     * Get the time of the last refresh.
+     *
+     * @return the {@link System#nanoTime()} of the last refresh, or 0 if never refreshed.
+     */
+    public synchronized long getRefreshTime() {
+        return refreshedAt;
+    }
+
+    /**
+     * Mark the table as outdated, so {@link #getRefreshTime()} returns 0 until the next refresh.
+     */
+    public synchronized void invalidate() {
+        refreshedAt = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getPid(int index) {
+        return pids[index];
+    }
+
+    public synchronized int getParentPid(int index) {
+        return parentPids[index];
+    }
+
+    /**
+     * @return the real user id, or -1 if unknown.
+     */
+    public synchronized int getUid(int index) {
+        return uids[index];
+    }
+
+    /**
+     * @return the start time in clock ticks after boot, telling apart processes with a reused
+     * pid.
+     */
+    public synchronized long getStartTime(int index) {
+        return startTimes[index];
+    }
+
+    public synchronized String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Find a process by its pid.
+     *
+     * @param pid the pid.
+     * @return the index of the process, or a negative number if it is not in the table.
+     */
+    public synchronized int indexOf(int pid) {
+        return Arrays.binarySearch(pids, 0, size, pid);
+    }
+
+    /**
+     * Find the processes with exactly the given name, i.e., <i>"com.foo"</i> matches neither
+     * <i>"com.foo.bar"</i> nor <i>"com.foo:remote"</i>. A command line with a path matches its
+     * file name as well, like <i>"pidof"</i> does.
+     *
+     * @param name the process name.
+     * @return the pids, empty if there is no such process.
+     */
+    public synchronized int[] findPids(String name) {
+        int[] found = new int[0];
+        for (int i = 0; i < size; i++) {
+            if (matches(names[i], name)) {
+                found = Arrays.copyOf(found, found.length + 1);
+                found[found.length - 1] = pids[i];
+            }
+        }
+        return found;
+    }
+
+    public synchronized boolean contains(String name) {
+        for (int i = 0; i < size; i++) {
+            if (matches(names[i], name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean matches(String processName, String name) {
+        if (processName.equals(name)) {
+            return true;
+        }
+        int slash = processName.lastIndexOf('/');
+        return slash >= 0 && processName.regionMatches(slash + 1, name, 0, name.length())
+                && processName.length() - slash - 1 == name.length();
+    }
+
+    /**
+     * Read one process from the proc file system.
+     *
+     * @return false if its files could not be read.
+     */
+    private boolean readProcess(int pid) {
+        File dir = new File(procDir, Integer.toString(pid));
+        int length = readFile(new File(dir, "stat"));
+        if (length <= 0) {
+            return false;
+        }
+        int index = size;
+        if (!parseStat(buffer, length, index)) {
+            return false;
+        }
+
+        length = readFile(new File(dir, "status"));
+        uids[index] = length > 0 ? parseUid(buffer, length) : -1;
+
+        length = readFile(new File(dir, "cmdline"));
+        if (length > 0) {
+            int end = 0;
+            while (end < length && buffer[end] != 0) {
+                end++;
+            }
+            if (end > 0) {
+                names[index] = decode(buffer, 0, end);
+            }
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Read the given processes, or all of them if null, through the root shell. The files are
+     * read in three batches instead of a few commands per process, so the shell starts three
+     * processes whatever the number of processes read: <i>"cat"</i> for the stats, and
+     * <i>"grep"</i> for the <i>"Uid:"</i> status lines and the command lines, each prefixed
+     * with its file name. The batches are separated by an empty line.
+     */
+    private boolean readAsRoot(List<String> pidList) {
+        String[] files = {"stat", "status", "cmdline"};
+        String[] globs = new String[files.length];
+        for (int i = 0; i < files.length; i++) {
+            StringBuilder glob = new StringBuilder();
+            if (pidList == null) {
+                glob.append(" [0-9]*/").append(files[i]);
+            } else {
+                for (String pid : pidList) {
+                    glob.append(' ').append(pid).append('/').append(files[i]);
+                }
+            }
+            globs[i] = glob.toString();
+        }
+        /* With /dev/null grep always has several files, so it always prefixes the file name */
+        String script = "cd " + procDir.getPath() + " && { cat" + globs[0] + "; echo;"
+                + " grep '^Uid:'" + globs[1] + " /dev/null; echo;"
+                + " grep -a ''" + globs[2] + " /dev/null; true; } 2>/dev/null";
+
+        final List<String> lines = new ArrayList<>();
+        Command command = new Command(script) {
+
+            @Override
+            public void onUpdate(int id, String message) {
+                lines.add(message);
+            }
+
+            @Override
+            public void onFinished(int id) {
+
+            }
+
+        }.setPriority(Command.Priority.INTERACTIVE);
+
+        try {
+            if (ShellPool.getRootPool().add(command).waitForFinish() != 0) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            return false;
+        } catch (PermissionException e) {
+            e.printStackTrace();
+            return false;
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        parseRootOutput(lines);
+        return true;
+    }
+
+    void parseRootOutput(List<String> lines) {
+        /* Processes read directly are sorted at the start of the table, keep them */
+        int readable = size;
+        int i = 0;
+        for (; i < lines.size() && lines.get(i).length() > 0; i++) {
+            byte[] stat = encode(lines.get(i));
+            int index = size;
+            if (parseStat(stat, stat.length, index)
+                    && Arrays.binarySearch(pids, 0, readable, pids[index]) < 0) {
+                uids[index] = -1;
+                size++;
+            }
+        }
+        sortByPid();
+
+        for (i++; i < lines.size() && lines.get(i).length() > 0; i++) {
+            String line = lines.get(i);
+            int start = prefixLength(line, "status");
+            int index = start > 0 ? indexOf(parsePid(line.substring(0, line.indexOf('/')))) : -1;
+            if (index >= 0) {
+                byte[] status = encode(line.substring(start));
+                uids[index] = parseUid(status, status.length);
+            }
+        }
+
+        /* A command line with line breaks has a line per part, only the first one is used */
+        int named = -1;
+        for (i++; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int start = prefixLength(line, "cmdline");
+            int index = start > 0 ? indexOf(parsePid(line.substring(0, line.indexOf('/')))) : -1;
+            if (index < 0 || index == named) {
+                continue;
+            }
+            named = index;
+            int end = line.indexOf('\0', start);
+            if (end < 0) {
+                end = line.length();
+            }
+            if (end > start) {
+                names[index] = line.substring(start, end);
+            }
+        }
+    }
+
+    /**
+     * Get the length of the <i>"&lt;pid&gt;/&lt;file&gt;:"</i> prefix of a line of grep.
+     *
+     * @return the length, or -1 if the line has no such prefix.
+     */
+    private static int prefixLength(String line, String file) {
+        int slash = line.indexOf('/');
+        if (slash <= 0 || !line.startsWith(file, slash + 1)
+                || line.length() <= slash + file.length() + 1
+                || line.charAt(slash + file.length() + 1) != ':') {
+            return -1;
+        }
+        return slash + file.length() + 2;
+    }
+
+    /**
+     * Parse <i>"pid (comm) state ppid ..."</i>. The comm may contain spaces and parentheses, so
+     * the fields are counted from its last closing parenthesis. The comm is taken as the name
+     * until the command line is read.
+     */
+    private boolean parseStat(byte[] data, int length, int index) {
+        ensureCapacity(index + 1);
+        int open = -1;
+        int close = -1;
+        for (int i = 0; i < length; i++) {
+            if (data[i] == '(' && open < 0) {
+                open = i;
+            } else if (data[i] == ')') {
+                close = i;
+            }
+        }
+        if (open < 0 || close < open) {
+            return false;
+        }
+
+        pids[index] = (int) parseNumber(data, 0, length);
+        names[index] = decode(data, open + 1, close);
+
+        /* Fields after the comm, starting with the state as field 3 */
+        int field = 3;
+        int pos = close + 1;
+        parentPids[index] = -1;
+        startTimes[index] = 0;
+        while (pos < length && field <= 22) {
+            while (pos < length && data[pos] == ' ') {
+                pos++;
+            }
+            if (field == 4) {
+                parentPids[index] = (int) parseNumber(data, pos, length);
+            } else if (field == 22) {
+                startTimes[index] = parseNumber(data, pos, length);
+            }
+            while (pos < length && data[pos] != ' ') {
+                pos++;
+            }
+            field++;
+        }
+        return pids[index] > 0;
+    }
+
+    private static int parseUid(byte[] data, int length) {
+        byte[] key = {'U', 'i', 'd', ':'};
+        for (int i = 0; i + key.length <= length; i++) {
+            if ((i == 0 || data[i - 1] == '\n') && data[i] == 'U' && data[i + 1] == 'i'
+                    && data[i + 2] == 'd' && data[i + 3] == ':') {
+                int pos = i + key.length;
+                while (pos < length && (data[pos] == ' ' || data[pos] == '\t')) {
+                    pos++;
+                }
+                return (int) parseNumber(data, pos, length);
+            }
+        }
+        return -1;
+    }
+
+    private static long parseNumber(byte[] data, int pos, int length) {
+        long value = 0;
+        boolean digits = false;
+        while (pos < length && data[pos] >= '0' && data[pos] <= '9') {
+            value = value * 10 + (data[pos++] - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+
+    private static int parsePid(String entry) {
+        int pid = 0;
+        for (int i = 0; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            pid = pid * 10 + (c - '0');
+        }
+        return pid;
+    }
+
+    /**
+     * Read a whole file into the buffer, growing it if needed.
+     *
+     * @return the number of bytes read, or -1 if the file can not be read.
+     */
+    private int readFile(File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            return length;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= pids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, pids.length * 2);
+        pids = Arrays.copyOf(pids, grown);
+        parentPids = Arrays.copyOf(parentPids, grown);
+        uids = Arrays.copyOf(uids, grown);
+        startTimes = Arrays.copyOf(startTimes, grown);
+        names = Arrays.copyOf(names, grown);
+    }
+
+    /**
+     * Sort the table by pid. The listing of /proc is sorted already in practice and the root
+     * shell lists in the same order, so this is an insertion sort which rarely moves anything.
+     */
+    private void sortByPid() {
+        for (int i = 1; i < size; i++) {
+            int pid = pids[i];
+            int j = i - 1;
+            if (pids[j] <= pid) {
+                continue;
+            }
+            int ppid = parentPids[i];
+            int uid = uids[i];
+            long startTime = startTimes[i];
+            String name = names[i];
+            while (j >= 0 && pids[j] > pid) {
+                pids[j + 1] = pids[j];
+                parentPids[j + 1] = parentPids[j];
+                uids[j + 1] = uids[j];
+                startTimes[j + 1] = startTimes[j];
+                names[j + 1] = names[j];
+                j--;
+            }
+            pids[j + 1] = pid;
+            parentPids[j + 1] = ppid;
+            uids[j + 1] = uid;
+            startTimes[j + 1] = startTime;
+            names[j + 1] = name;
+        }
+    }
+
+    private static String decode(byte[] data, int start, int end) {
+        try {
+            return new String(data, start, end - start, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(String line) {
+        try {
+            return line.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
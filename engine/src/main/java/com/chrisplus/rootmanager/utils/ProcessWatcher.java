@@ -0,0 +1,263 @@
+package com.chrisplus.rootmanager.utils;
+
+import com.chrisplus.rootmanager.Constants;
+import com.chrisplus.rootmanager.container.Shell;
+
+import java.io.File;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watch the process table and report processes starting and exiting.
+ * <p>
+ * One watcher serves all its listeners. While at least one listener is registered, the process
+ * table is read every interval on a thread of the shell executor and compared with the previous
+ * read. The two tables are reused alternately and compared in place by walking both in pid
+ * order, so the comparison itself allocates nothing. A process whose pid was reused meanwhile
+ * is reported as exited and started, and so is a process which changed its name, i.e., an
+ * app forked from the zygote, which is first seen under the name of the zygote. A read which
+ * misses processes, i.e., because the root shell is not available, is skipped.
+ * </p>
+ * <p>
+ * Only changes are reported, the processes running when the first listener is registered are
+ * the baseline. Events are reported on the thread of the watcher, so listeners must return
+ * quickly.
+ * </p>
+ */
+public class ProcessWatcher {
+
+    /**
+     * Receives the events of a watcher.
+     */
+    public interface Listener {
+
+        /**
+         * A process has started.
+         *
+         * @param pid  the process id.
+         * @param uid  the user id, or -1 if unknown.
+         * @param name the process name.
+         */
+        void onProcessStarted(int pid, int uid, String name);
+
+        /**
+         * A process has exited.
+         *
+         * @param pid  the process id.
+         * @param uid  the user id, or -1 if unknown.
+         * @param name the process name.
+         */
+        void onProcessExited(int pid, int uid, String name);
+    }
+
+    private static class Subscription {
+
+        final Listener listener;
+
+        final String name;
+
+        final int uid;
+
+        Subscription(Listener listener, String name, int uid) {
+            this.listener = listener;
+            this.name = name;
+            this.uid = uid;
+        }
+
+        boolean accepts(int uid, String name) {
+            return (this.uid < 0 || this.uid == uid)
+                    && (this.name == null || ProcessTable.matches(name, this.name));
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final long interval;
+
+    private ProcessTable previous;
+
+    private ProcessTable current;
+
+    private boolean running = false;
+
+    public ProcessWatcher() {
+        this(Constants.PROCESS_WATCH_INTERVAL);
+    }
+
+    /**
+     * @param interval the time between two reads of the process table in milliseconds.
+     */
+    public ProcessWatcher(long interval) {
+        this(interval, new File("/proc"), true);
+    }
+
+    /**
+     * @param interval     the time between two reads of the process table in milliseconds.
+     * @param procDir      the proc file system.
+     * @param rootFallback true to read unreadable processes through the root shell.
+     */
+    public ProcessWatcher(long interval, File procDir, boolean rootFallback) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Illegal watch interval " + interval);
+        }
+        this.interval = interval;
+        this.previous = new ProcessTable(procDir, rootFallback);
+        this.current = new ProcessTable(procDir, rootFallback);
+    }
+
+    /**
+     * Report every process.
+     *
+     * @param listener the listener.
+     */
+    public void addListener(Listener listener) {
+        subscribe(new Subscription(listener, null, -1));
+    }
+
+    /**
+     * Report the processes of exactly the given name, see {@link ProcessTable#findPids(String)}.
+     *
+     * @param listener the listener.
+     * @param name     the process name, i.e., a package name.
+     */
+    public void addListener(Listener listener, String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Process name must not be null");
+        }
+        subscribe(new Subscription(listener, name, -1));
+    }
+
+    /**
+     * Report the processes of the given user.
+     *
+     * @param listener the listener.
+     * @param uid      the user id, i.e., of an app.
+     */
+    public void addListener(Listener listener, int uid) {
+        if (uid < 0) {
+            throw new IllegalArgumentException("Illegal uid " + uid);
+        }
+        subscribe(new Subscription(listener, null, uid));
+    }
+
+    /**
+     * Remove every registration of a listener. The watcher stops once it has no listeners.
+     *
+     * @param listener the listener.
+     */
+    public void removeListener(Listener listener) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.listener == listener) {
+                subscriptions.remove(subscription);
+            }
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    private void subscribe(Subscription subscription) {
+        if (subscription.listener == null) {
+            throw new IllegalArgumentException("Listener must not be null");
+        }
+        synchronized (this) {
+            subscriptions.add(subscription);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        Shell.execute("Process Watcher", new Runnable() {
+            public void run() {
+                watch();
+            }
+        });
+    }
+
+    private void watch() {
+        /* An incomplete table is no baseline, it would report the missing processes as started */
+        boolean baseline = previous.refresh();
+        while (true) {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + interval;
+                try {
+                    long remaining;
+                    while (!subscriptions.isEmpty()
+                            && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    subscriptions.clear();
+                }
+                if (subscriptions.isEmpty()) {
+                    running = false;
+                    return;
+                }
+            }
+
+            if (!current.refresh()) {
+                continue;
+            }
+            if (baseline) {
+                compare(previous, current);
+            }
+            baseline = true;
+            ProcessTable swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    /**
+     * Walk both tables in pid order and report the differences.
+     */
+    private void compare(ProcessTable before, ProcessTable after) {
+        int i = 0;
+        int j = 0;
+        int beforeSize = before.size();
+        int afterSize = after.size();
+        while (i < beforeSize || j < afterSize) {
+            int oldPid = i < beforeSize ? before.getPid(i) : Integer.MAX_VALUE;
+            int newPid = j < afterSize ? after.getPid(j) : Integer.MAX_VALUE;
+            if (oldPid < newPid) {
+                exited(before, i++);
+            } else if (oldPid > newPid) {
+                started(after, j++);
+            } else {
+                if (before.getStartTime(i) != after.getStartTime(j)
+                        || !before.getName(i).equals(after.getName(j))) {
+                    exited(before, i);
+                    started(after, j);
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private void started(ProcessTable table, int index) {
+        int pid = table.getPid(index);
+        int uid = table.getUid(index);
+        String name = table.getName(index);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(uid, name)) {
+                subscription.listener.onProcessStarted(pid, uid, name);
+            }
+        }
+    }
+
+    private void exited(ProcessTable table, int index) {
+        int pid = table.getPid(index);
+        int uid = table.getUid(index);
+        String name = table.getName(index);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(uid, name)) {
+                subscription.listener.onProcessExited(pid, uid, name);
+            }
+        }
+    }
+}
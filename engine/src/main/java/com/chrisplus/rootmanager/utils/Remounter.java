@@ -20,14 +20,14 @@ package com.chrisplus.rootmanager.utils;
 
 import com.chrisplus.rootmanager.container.Command;
 import com.chrisplus.rootmanager.container.Mount;
-import com.chrisplus.rootmanager.container.Shell;
+import com.chrisplus.rootmanager.container.ShellPool;
 import com.chrisplus.rootmanager.exception.PermissionException;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
@@ -90,7 +90,7 @@ public class Remounter {
             };
 
             try {
-                Shell.startRootShell().add(command).waitForFinish();
+                ShellPool.getRootPool().add(command).waitForFinish();
             } catch (InterruptedException e) {
                 e.printStackTrace();
             } catch (IOException e) {
@@ -99,6 +99,8 @@ public class Remounter {
                 e.printStackTrace();
             } catch (PermissionException e) {
                 e.printStackTrace();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
             }
 
         }
@@ -132,28 +134,42 @@ public class Remounter {
 
     private static List<Mount> getMounts() {
 
-        LineNumberReader lnr = null;
+        BufferedReader reader = null;
 
         try {
-            lnr = new LineNumberReader(new FileReader(MOUNT_FILE));
+            reader = new BufferedReader(new FileReader(MOUNT_FILE));
         } catch (FileNotFoundException e1) {
             e1.printStackTrace();
             return null;
         }
 
-        String line;
-        ArrayList<Mount> mounts = new ArrayList<Mount>();
         try {
-            while ((line = lnr.readLine()) != null) {
-                String[] fields = line.split(" ");
-                mounts.add(
-                        new Mount(new File(fields[0]), new File(fields[1]), fields[2], fields[3]));
-            }
-            lnr.close();
+            return parseMounts(reader);
         } catch (IOException e) {
             e.printStackTrace();
+            return new ArrayList<Mount>();
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+    }
 
+    /**
+     * Parse a mount table in the format of <i>/proc/mounts</i>.
+     *
+     * @param reader the mount table.
+     * @return the mounts.
+     */
+    static List<Mount> parseMounts(BufferedReader reader) throws IOException {
+        String line;
+        ArrayList<Mount> mounts = new ArrayList<Mount>();
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(" ");
+            mounts.add(new Mount(new File(fields[0]), new File(fields[1]), fields[2], fields[3]));
+        }
         return mounts;
     }
 }
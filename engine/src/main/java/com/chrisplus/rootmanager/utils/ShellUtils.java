@@ -0,0 +1,186 @@
+package com.chrisplus.rootmanager.utils;
+
+import com.chrisplus.rootmanager.container.Command;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a set of methods used by the shell engine, free of any Android dependency.
+ * <p>
+ * Logs are dropped unless a {@link Logger} is set. The Android library sets one writing to
+ * logcat, and desktop JVMs can set their own. Messages are formatted only if their level is
+ * enabled. Numbers go through the <i>long</i> overloads, which box them only then. Arguments
+ * built by the caller, i.e., a concatenated or redacted string, are built anyway, so such
+ * logs are guarded by {@link #isLoggable(Logger.Level)}. A disabled log still costs the call
+ * and the level check, it is not removed at compile time.
+ * </p>
+ */
+public class ShellUtils {
+
+    private final static String TAG = "RootManager";
+
+    private static final AtomicInteger cmdID = new AtomicInteger();
+
+    private static volatile Logger logger = null;
+
+    private static volatile Logger.Level level = Logger.Level.DEBUG;
+
+    private static volatile boolean redactCommands = true;
+
+    /**
+     * Set where the logs of the shell engine go.
+     *
+     * @param logger the logger, or null to drop logs.
+     */
+    public static void setLogger(Logger logger) {
+        ShellUtils.logger = logger;
+    }
+
+    /**
+     * Set the lowest level to log, {@link Logger.Level#DEBUG} by default. Per-command logs are
+     * {@link Logger.Level#VERBOSE}.
+     *
+     * @param level the level.
+     */
+    public static void setLogLevel(Logger.Level level) {
+        ShellUtils.level = level;
+    }
+
+    /**
+     * Set if command contents are hidden in logs, which is the default since commands can carry
+     * paths or secrets. Redacted commands are logged as their program name and length.
+     *
+     * @param redact true to redact commands.
+     */
+    public static void setRedactCommands(boolean redact) {
+        ShellUtils.redactCommands = redact;
+    }
+
+    /**
+     * Check if a log of the given level would be output.
+     *
+     * @param level the level.
+     * @return true if a logger is set and the level is enabled.
+     */
+    public static boolean isLoggable(Logger.Level level) {
+        return logger != null && level.compareTo(ShellUtils.level) >= 0;
+    }
+
+    /**
+     * Output a log with extend log tag.
+     *
+     * @param level     the level.
+     * @param extendTag Your extend tag.
+     * @param message   The message will be printed.
+     */
+    public static void log(Logger.Level level, String extendTag, String message) {
+        if (isLoggable(level)) {
+            output(level, extendTag, message);
+        }
+    }
+
+    /**
+     * Output a log formatted by {@link String#format(String, Object...)}, only formatting if the
+     * level is enabled.
+     *
+     * @param level     the level.
+     * @param extendTag Your extend tag.
+     * @param format    the format.
+     * @param arg       the argument.
+     */
+    public static void log(Logger.Level level, String extendTag, String format, Object arg) {
+        if (isLoggable(level)) {
+            output(level, extendTag, String.format(format, arg));
+        }
+    }
+
+    public static void log(Logger.Level level, String extendTag, String format, Object arg1,
+            Object arg2) {
+        if (isLoggable(level)) {
+            output(level, extendTag, String.format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Output a log with a number, which is boxed and formatted only if the level is enabled.
+     *
+     * @param level     the level.
+     * @param extendTag Your extend tag.
+     * @param format    the format.
+     * @param arg       the argument.
+     */
+    public static void log(Logger.Level level, String extendTag, String format, long arg) {
+        if (isLoggable(level)) {
+            output(level, extendTag, String.format(format, arg));
+        }
+    }
+
+    public static void log(Logger.Level level, String extendTag, String format, long arg1,
+            long arg2) {
+        if (isLoggable(level)) {
+            output(level, extendTag, String.format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Output a debug log.
+     *
+     * @param message The message will be printed.
+     */
+    public static void Log(String message) {
+        if (isLoggable(Logger.Level.DEBUG)) {
+            output(Logger.Level.DEBUG, null, message);
+        }
+    }
+
+    /**
+     * Output a debug log with extend log tag.
+     * <p>
+     * The example: LibTag::YourExtendTag, Log Message.
+     * </p>
+     *
+     * @param extendTag Your extend tag.
+     * @param message   The message will be printed.
+     */
+    public static void Log(String extendTag, String message) {
+        log(Logger.Level.DEBUG, extendTag, message);
+    }
+
+    /**
+     * Make a command fit for logs, see {@link #setRedactCommands(boolean)}.
+     *
+     * @param command the command.
+     * @return the command, or its program name and length if commands are redacted.
+     */
+    public static String redact(String command) {
+        if (!redactCommands || command == null) {
+            return command;
+        }
+        String trimmed = command.trim();
+        int end = 0;
+        while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end))) {
+            end++;
+        }
+        return trimmed.substring(0, end) + " <" + command.length() + " chars>";
+    }
+
+    /**
+     * Get a command Id for each {@link Command}.
+     *
+     * @return the actual ID.
+     */
+    public static int generateCommandID() {
+        int id = cmdID.incrementAndGet();
+        if (isLoggable(Logger.Level.VERBOSE)) {
+            output(Logger.Level.VERBOSE, null, "Return a command id " + id);
+        }
+        return id;
+    }
+
+    private static void output(Logger.Level level, String extendTag, String message) {
+        Logger current = logger;
+        if (current != null) {
+            current.log(level, extendTag == null ? TAG : TAG + "::" + extendTag, message);
+        }
+    }
+}
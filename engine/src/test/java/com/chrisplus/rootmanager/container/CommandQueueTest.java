@@ -0,0 +1,141 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommandQueueTest {
+
+    private static Command command(Command.Priority priority) {
+        return new Command("true") {
+
+            @Override
+            public void onUpdate(int id, String message) {
+
+            }
+
+            @Override
+            public void onFinished(int id) {
+
+            }
+
+        }.setPriority(priority);
+    }
+
+    private static Command command() {
+        return command(Command.Priority.NORMAL);
+    }
+
+    @Test
+    public void windowBoundsCommandsInFlight() throws Exception {
+        CommandQueue queue = new CommandQueue(16, 2, 0, CommandQueue.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 5; i++) {
+            queue.put(command());
+        }
+
+        assertEquals(0, queue.pollWrite());
+        assertEquals(2, queue.getTail());
+        assertFalse(queue.canWrite());
+        assertEquals(-1, queue.pollWrite());
+        assertEquals(5, queue.size());
+
+        queue.release(0);
+        assertEquals(1, queue.getHead());
+        assertEquals(2, queue.pollWrite());
+        assertEquals(3, queue.getTail());
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void releaseOutOfOrderMovesHeadPastReleasedCommands() throws Exception {
+        CommandQueue queue = new CommandQueue(16, 4, 0, CommandQueue.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 3; i++) {
+            queue.put(command());
+        }
+        queue.pollWrite();
+
+        queue.release(1);
+        assertEquals(0, queue.getHead());
+        assertNull(queue.get(1));
+
+        queue.release(0);
+        assertEquals(2, queue.getHead());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void writesBetterPriorityFirst() throws Exception {
+        CommandQueue queue = new CommandQueue(16, 3, 0, CommandQueue.OverflowPolicy.BLOCK);
+        Command bulk = command(Command.Priority.BULK);
+        Command normal = command(Command.Priority.NORMAL);
+        Command interactive = command(Command.Priority.INTERACTIVE);
+        queue.putAll(Arrays.asList(bulk, normal, interactive));
+
+        long first = queue.pollWrite();
+        assertSame(interactive, queue.get(first));
+        assertSame(normal, queue.get(first + 1));
+        assertSame(bulk, queue.get(first + 2));
+    }
+
+    @Test
+    public void agedCommandOvertakesBetterPriority() throws Exception {
+        CommandQueue queue = new CommandQueue(16, 1, 10, CommandQueue.OverflowPolicy.BLOCK);
+        Command bulk = command(Command.Priority.BULK);
+        bulk.queuedAt = System.nanoTime() - 50 * 1000000L;
+        Command interactive = command(Command.Priority.INTERACTIVE);
+        interactive.queuedAt = System.nanoTime();
+        queue.put(bulk);
+        queue.put(interactive);
+
+        assertSame(bulk, queue.get(queue.pollWrite()));
+    }
+
+    @Test
+    public void countAheadIgnoresWorsePriorities() throws Exception {
+        CommandQueue queue = new CommandQueue(16, 1, 0, CommandQueue.OverflowPolicy.BLOCK);
+        queue.put(command(Command.Priority.NORMAL));
+        queue.pollWrite();
+        queue.put(command(Command.Priority.BULK));
+        queue.put(command(Command.Priority.NORMAL));
+
+        assertEquals(1, queue.countAhead(Command.Priority.INTERACTIVE));
+        assertEquals(2, queue.countAhead(Command.Priority.NORMAL));
+        assertEquals(3, queue.countAhead(Command.Priority.BULK));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectPolicyThrowsWhenFull() throws Exception {
+        CommandQueue queue = new CommandQueue(2, 2, 0, CommandQueue.OverflowPolicy.REJECT);
+        queue.put(command());
+        queue.put(command());
+        queue.put(command());
+    }
+
+    @Test
+    public void closedQueueDrainsPendingCommands() throws Exception {
+        CommandQueue queue = new CommandQueue(16, 1, 0, CommandQueue.OverflowPolicy.BLOCK);
+        queue.put(command());
+        queue.put(command());
+        queue.close();
+
+        assertFalse(queue.isDrained());
+        queue.pollWrite();
+        queue.release(0);
+        queue.pollWrite();
+        assertTrue(queue.isDrained());
+        assertNull(queue.awaitRead(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedQueueRejectsCommands() throws Exception {
+        CommandQueue queue = new CommandQueue(16, CommandQueue.OverflowPolicy.BLOCK);
+        queue.close();
+        queue.put(command());
+    }
+}
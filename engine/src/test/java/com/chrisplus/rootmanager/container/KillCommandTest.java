@@ -0,0 +1,70 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Kills processes started by a local /bin/sh.
+ */
+public class KillCommandTest {
+
+    /* Above any pid the kernel hands out */
+    private static final int MISSING = Integer.MAX_VALUE;
+
+    private Shell shell;
+
+    @Before
+    public void setUp() throws Exception {
+        shell = Shell.spawn("/bin/sh", 5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        shell.close();
+    }
+
+    /**
+     * Start a process which exits on SIGTERM and one which ignores it.
+     */
+    private int[] startProcesses() throws Exception {
+        ShellTest.Recorder start = new ShellTest.Recorder(
+                "sleep 30 >/dev/null 2>&1 & echo $!",
+                "(trap '' TERM; exec sleep 30) >/dev/null 2>&1 & echo $!");
+        shell.add(start);
+        assertEquals(0, start.waitForFinish(5000));
+        return new int[]{Integer.parseInt(start.output.get(0)),
+                Integer.parseInt(start.output.get(1))};
+    }
+
+    @Test(timeout = 10000)
+    public void escalatesToKillAfterTheGracePeriod() throws Exception {
+        int[] pids = startProcesses();
+        KillCommand kill = new KillCommand(new int[]{pids[0], pids[1], MISSING}, 300);
+        shell.add(kill);
+        assertEquals(0, kill.waitForFinish(5000));
+
+        Map<Integer, KillCommand.Outcome> outcomes = kill.getOutcomes();
+        assertEquals(KillCommand.Outcome.TERMINATED, outcomes.get(pids[0]));
+        assertEquals(KillCommand.Outcome.KILLED, outcomes.get(pids[1]));
+        assertEquals(KillCommand.Outcome.NOT_FOUND, outcomes.get(MISSING));
+    }
+
+    @Test(timeout = 10000)
+    public void killsRightAwayWithoutGracePeriod() throws Exception {
+        int[] pids = startProcesses();
+        KillCommand kill = new KillCommand(pids, 0);
+        long start = System.nanoTime();
+        shell.add(kill);
+        assertEquals(0, kill.waitForFinish(5000));
+
+        assertTrue(System.nanoTime() - start < 1000 * 1000000L);
+        assertEquals(KillCommand.Outcome.KILLED, kill.getOutcomes().get(pids[0]));
+        assertEquals(KillCommand.Outcome.KILLED, kill.getOutcomes().get(pids[1]));
+    }
+}
@@ -0,0 +1,108 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutputBufferTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("spill", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static List<String> read(OutputBuffer buffer) {
+        List<String> lines = new ArrayList<>();
+        for (String line : buffer) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void keepsSmallOutputInMemory() {
+        OutputBuffer buffer = new OutputBuffer(1024, directory);
+        buffer.addLine("one");
+        buffer.addLine("two");
+        buffer.finish();
+
+        assertFalse(buffer.isSpilled());
+        assertEquals(0, directory.list().length);
+        assertEquals(Arrays.asList("one", "two"), read(buffer));
+        assertEquals(2, buffer.getLineCount());
+    }
+
+    @Test
+    public void spillsBeyondTheThreshold() {
+        /* Two bytes per char, the third line crosses 20 bytes */
+        OutputBuffer buffer = new OutputBuffer(20, directory);
+        buffer.addLine("abcd");
+        buffer.addLine("");
+        buffer.addLine("\u00e9t\u00e9 line");
+        assertTrue(buffer.isSpilled());
+        buffer.addLine("after the spill");
+        buffer.finish();
+
+        assertEquals(1, directory.list().length);
+        assertEquals(Arrays.asList("abcd", "", "\u00e9t\u00e9 line", "after the spill"),
+                read(buffer));
+        assertEquals(4, buffer.getLineCount());
+        assertNull(buffer.getError());
+    }
+
+    @Test
+    public void readsLongSpilledLines() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longLine.append(i % 10);
+        }
+        OutputBuffer buffer = new OutputBuffer(0, directory);
+        buffer.addLine(longLine.toString());
+        buffer.addLine("short");
+        buffer.finish();
+
+        assertEquals(Arrays.asList(longLine.toString(), "short"), read(buffer));
+    }
+
+    @Test
+    public void closeDeletesTheFile() {
+        OutputBuffer buffer = new OutputBuffer(0, directory);
+        buffer.addLine("spilled");
+        buffer.close();
+
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void canNotBeReadBeforeTheCommandFinishes() {
+        OutputBuffer buffer = new OutputBuffer(1024, directory);
+        buffer.addLine("one");
+        buffer.iterator();
+    }
+}
@@ -0,0 +1,109 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class OutputReaderTest {
+
+    private static OutputReader reader(String text) throws Exception {
+        return new OutputReader(new ByteArrayInputStream(text.getBytes("UTF-8")));
+    }
+
+    /* Hands out at most one byte per read, so every match spans several buffer fills */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        TrickleInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    private static String copyUntil(OutputReader reader, String marker) throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        long copied = reader.copyUntil(marker.getBytes("UTF-8"), sink);
+        assertEquals(sink.size(), copied);
+        return sink.toString("UTF-8");
+    }
+
+    @Test
+    public void copyUntilStopsAtMarker() throws Exception {
+        OutputReader reader = reader("binary data END rest\n");
+        assertEquals("binary data ", copyUntil(reader, "END"));
+        assertEquals(" rest", reader.readLine());
+    }
+
+    @Test
+    public void copyUntilKeepsBytesOfFailedPartialMatches() throws Exception {
+        assertEquals("aa", copyUntil(reader("aaaab"), "aab"));
+        assertEquals("xabab", copyUntil(reader("xabababac"), "abac"));
+        assertEquals("ab", copyUntil(reader("abaabaabb"), "aabaabb"));
+    }
+
+    @Test
+    public void copyUntilFindsMarkerAcrossReads() throws Exception {
+        byte[] data = "0123aabaabaabbtail\n".getBytes("UTF-8");
+        OutputReader reader = new OutputReader(new TrickleInputStream(data));
+        assertEquals("0123aab", copyUntil(reader, "aabaabb"));
+        assertEquals("tail", reader.readLine());
+    }
+
+    @Test
+    public void copyUntilFindsMarkerAcrossBufferBoundary() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 8190; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        String before = text.toString();
+        text.append("MARKER");
+        OutputReader reader = reader(text.toString());
+        assertEquals(before, copyUntil(reader, "MARKER"));
+    }
+
+    @Test(expected = EOFException.class)
+    public void copyUntilFailsWithoutMarker() throws Exception {
+        copyUntil(reader("no marker here"), "END");
+    }
+
+    @Test
+    public void parsesSentinelInPlace() throws Exception {
+        byte[] token = "TOKEN".getBytes("UTF-8");
+        OutputReader reader = reader("output\nsome TOKEN 12 -1\r\n");
+
+        assertEquals(6, reader.fillLine());
+        assertEquals(-1, reader.indexOf(token));
+
+        int length = reader.fillLine();
+        assertEquals(16, length);
+        int pos = reader.indexOf(token);
+        assertEquals(5, pos);
+        reader.seek(pos + token.length);
+        assertEquals(12, reader.nextNumber());
+        assertEquals(-1, reader.nextNumber());
+        assertEquals(Long.MIN_VALUE, reader.nextNumber());
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    public void readsLongLinesAndLastLineWithoutTerminator() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append('x');
+        }
+        InputStream in = new ByteArrayInputStream((text + "\nlast").getBytes("UTF-8"));
+        OutputReader reader = new OutputReader(in);
+        assertEquals(text.toString(), reader.readLine());
+        assertEquals("last", reader.readLine());
+        assertNull(reader.readLine());
+    }
+}
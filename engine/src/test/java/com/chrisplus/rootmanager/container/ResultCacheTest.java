@@ -0,0 +1,76 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResultCacheTest {
+
+    private static final long TTL = 60000;
+
+    private static Result result(String message) {
+        return Result.newBuilder().setCustomMessage(message).build();
+    }
+
+    @Test
+    public void returnsCachedResult() {
+        ResultCache cache = new ResultCache(4);
+        Result result = result("a");
+        cache.put("a", result, TTL, cache.getGeneration());
+        assertSame(result, cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void expiresAfterTimeToLive() throws Exception {
+        ResultCache cache = new ResultCache(4);
+        cache.put("a", result("a"), 1, cache.getGeneration());
+        Thread.sleep(20);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void doesNotCacheWithoutTimeToLive() {
+        ResultCache cache = new ResultCache(4);
+        cache.put("a", result("a"), 0, cache.getGeneration());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ResultCache cache = new ResultCache(2);
+        Result a = result("a");
+        Result b = result("b");
+        Result c = result("c");
+        cache.put("a", a, TTL, cache.getGeneration());
+        cache.put("b", b, TTL, cache.getGeneration());
+        assertSame(a, cache.get("a"));
+
+        cache.put("c", c, TTL, cache.getGeneration());
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(c, cache.get("c"));
+    }
+
+    @Test
+    public void dropsResultComputedBeforeInvalidation() {
+        ResultCache cache = new ResultCache(4);
+        long generation = cache.getGeneration();
+        cache.invalidate("other");
+        cache.put("a", result("a"), TTL, generation);
+        assertNull(cache.get("a"));
+
+        cache.put("a", result("a"), TTL, cache.getGeneration());
+        cache.invalidateAll();
+        assertNull(cache.get("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIllegalSize() {
+        new ResultCache(0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResultFutureTest {
+
+    @Test
+    public void callbacksRunOnceOnCompletion() {
+        final List<Result> results = new ArrayList<>();
+        ResultFuture.Callback callback = new ResultFuture.Callback() {
+            public void onResult(Result result) {
+                results.add(result);
+            }
+        };
+        ResultFuture future = new ResultFuture().addCallback(callback);
+        Result first = Result.newBuilder().setCommandSuccess().build();
+
+        future.set(first);
+        future.set(Result.newBuilder().setFailed().build());
+        assertEquals(Arrays.asList(first), results);
+
+        /* Registered after completion, invoked right away */
+        future.addCallback(callback);
+        assertEquals(Arrays.asList(first, first), results);
+        assertSame(first, future.getNow(null));
+    }
+
+    @Test
+    public void getNowReturnsTheDefaultWhilePending() {
+        ResultFuture future = new ResultFuture();
+        Result absent = Result.newBuilder().setFailed().build();
+
+        assertFalse(future.isDone());
+        assertSame(absent, future.getNow(absent));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void timedGetTimesOut() throws Exception {
+        new ResultFuture().get(20, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(timeout = 10000)
+    public void getWaitsForAnotherThread() throws Exception {
+        final ResultFuture future = new ResultFuture();
+        final Result result = Result.newBuilder().setCommandSuccess().build();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                future.set(result);
+            }
+        }.start();
+
+        assertSame(result, future.get());
+        assertTrue(future.isDone());
+    }
+
+    @Test(timeout = 10000)
+    public void cancelCancelsTheCommandInTheShell() throws Exception {
+        Shell shell = Shell.spawn("/bin/sh", 5000);
+        try {
+            ResultFuture future = shell.submit("sleep 30");
+            assertTrue(future.cancel(true));
+            Result result = future.get(5, TimeUnit.SECONDS);
+
+            assertTrue(future.isCancelled());
+            assertEquals(-1, result.getExitCode());
+            assertFalse(future.cancel(true));
+        } finally {
+            shell.close();
+        }
+    }
+
+    @Test
+    public void completedFutureHasNoCommandToCancel() {
+        ResultFuture future = ResultFuture.completed(Result.newBuilder().setFailed().build());
+
+        assertTrue(future.isDone());
+        assertFalse(future.cancel(true));
+        assertFalse(future.isCancelled());
+    }
+
+    @Test(timeout = 10000)
+    public void submitCompletesWithOutputAndErrors() throws Exception {
+        Shell shell = Shell.spawn("/bin/sh", 5000);
+        try {
+            Result result = shell.submit("echo out; echo err >&2").get(5, TimeUnit.SECONDS);
+
+            assertEquals(0, result.getExitCode());
+            assertEquals(Arrays.asList("out"), result.getOutputLines());
+            assertEquals(Arrays.asList("err"), result.getErrorLines());
+        } finally {
+            shell.close();
+        }
+    }
+}
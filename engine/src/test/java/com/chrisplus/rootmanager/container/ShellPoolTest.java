@@ -0,0 +1,129 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs pools of local /bin/sh shells.
+ */
+public class ShellPoolTest {
+
+    private ShellPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * A command closing the first shell it is added to, between the dispatch and the queueing,
+     * the way a shell dies under a caller.
+     */
+    static class ClosingRecorder extends ShellTest.Recorder {
+
+        final List<Shell> shells = new ArrayList<>();
+
+        ClosingRecorder(String... commands) {
+            super(commands);
+        }
+
+        @Override
+        void attach(Shell shell) {
+            super.attach(shell);
+            shells.add(shell);
+            if (shells.size() == 1) {
+                try {
+                    shell.close();
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void spawnsOnlyWhileAllShellsAreBusy() throws Exception {
+        pool = new ShellPool("/bin/sh", 1, 2, 5000);
+        pool.start();
+        assertEquals(1, pool.getSize());
+
+        ShellTest.Recorder idle = new ShellTest.Recorder("echo idle");
+        pool.add(idle);
+        assertEquals(0, idle.waitForFinish(5000));
+        pool.add(new ShellTest.Recorder("echo again")).waitForFinish(5000);
+        assertEquals(1, pool.getSize());
+
+        pool.add(new ShellTest.Recorder("sleep 0.5"));
+        pool.add(new ShellTest.Recorder("sleep 0.5"));
+        assertEquals(2, pool.getSize());
+        assertEquals(2, pool.getBusyCount());
+
+        /* At the maximum size, the least loaded shell takes the command */
+        pool.add(new ShellTest.Recorder("sleep 0.5"));
+        assertEquals(2, pool.getSize());
+        assertEquals(3, pool.getPendingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void busyShellsRunCommandsInParallel() throws Exception {
+        pool = new ShellPool("/bin/sh", 0, 3, 5000);
+        List<Command> commands = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            commands.add(pool.add(new ShellTest.Recorder("sleep 0.5")));
+        }
+        for (Command command : commands) {
+            assertEquals(0, command.waitForFinish(5000));
+        }
+
+        assertEquals(3, pool.getSize());
+        assertTrue(System.nanoTime() - start < 1400 * 1000000L);
+    }
+
+    @Test(timeout = 10000)
+    public void addRetriesOnAnotherShellWhenTheShellCloses() throws Exception {
+        pool = new ShellPool("/bin/sh", 1, 1, 5000);
+        pool.start();
+        ClosingRecorder command = new ClosingRecorder("echo retried");
+        pool.add(command);
+
+        assertEquals(0, command.waitForFinish(5000));
+        assertEquals(Arrays.asList("retried"), command.output);
+        assertEquals(2, command.shells.size());
+        assertNotSame(command.shells.get(0), command.shells.get(1));
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test(timeout = 10000)
+    public void addAllRetriesTheBatchWhenTheShellCloses() throws Exception {
+        pool = new ShellPool("/bin/sh", 1, 1, 5000);
+        pool.start();
+        ClosingRecorder first = new ClosingRecorder("echo first");
+        ShellTest.Recorder second = new ShellTest.Recorder("echo second");
+        pool.addAll(Arrays.<Command>asList(first, second));
+
+        assertEquals(0, second.waitForFinish(5000));
+        assertEquals(Arrays.asList("first"), first.output);
+        assertEquals(Arrays.asList("second"), second.output);
+        assertEquals(2, first.shells.size());
+    }
+
+    @Test(timeout = 10000, expected = IllegalStateException.class)
+    public void closedPoolRejectsCommands() throws Exception {
+        pool = new ShellPool("/bin/sh", 1, 1, 5000);
+        pool.start();
+        pool.close();
+        pool.add(new ShellTest.Recorder("echo late"));
+    }
+}
@@ -0,0 +1,238 @@
+package com.chrisplus.rootmanager.container;
+
+import com.chrisplus.rootmanager.metrics.ShellMetrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the shell against a local /bin/sh in place of su.
+ */
+public class ShellTest {
+
+    private Shell shell;
+
+    static class Recorder extends Command {
+
+        final List<String> output = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        Recorder(String... commands) {
+            super(commands);
+        }
+
+        @Override
+        public void onUpdate(int id, String message) {
+            output.add(message);
+        }
+
+        @Override
+        public void onError(int id, String message) {
+            errors.add(message);
+        }
+
+        @Override
+        public void onFinished(int id) {
+
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        shell = Shell.spawn("/bin/sh", 5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        shell.close();
+    }
+
+    static boolean awaitGone(String pid, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (new File("/proc/" + pid).exists()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Test(timeout = 10000)
+    public void batchIsWrittenInOneGo() throws Exception {
+        List<Command> batch = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            batch.add(new Recorder("echo " + i));
+        }
+        shell.addAll(batch);
+
+        for (int i = 0; i < batch.size(); i++) {
+            Recorder command = (Recorder) batch.get(i);
+            assertEquals(0, command.waitForFinish(5000));
+            assertEquals(Arrays.asList(Integer.toString(i)), command.output);
+            /* The window takes the whole batch, so all of it goes in a single write */
+            assertEquals(batch.get(0).writtenAt, command.writtenAt);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void batchLargerThanTheWindowRunsInOrder() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<Command> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new Recorder("echo " + i) {
+                @Override
+                public void onUpdate(int id, String message) {
+                    order.add(message);
+                }
+            });
+        }
+        shell.addAll(batch);
+
+        assertEquals(0, batch.get(99).waitForFinish(5000));
+        assertEquals(100, order.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), order.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void errorsGoToTheirOwnCommand() throws Exception {
+        Recorder first = new Recorder("echo out1; echo err1 >&2; echo out2");
+        Recorder second = new Recorder("echo err2 >&2; ls /nonexistent-path");
+        Recorder third = new Recorder("echo out3");
+        shell.add(first);
+        shell.add(second);
+        shell.add(third);
+
+        assertEquals(0, third.waitForFinish(5000));
+        assertEquals(Arrays.asList("out1", "out2"), first.output);
+        assertEquals(Arrays.asList("err1"), first.errors);
+        assertTrue(second.output.isEmpty());
+        assertEquals(2, second.errors.size());
+        assertEquals("err2", second.errors.get(0));
+        assertTrue(second.getExitCode() != 0);
+        assertTrue(third.errors.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void lotsOfErrorsDoNotStallTheShell() throws Exception {
+        /* Far more than a pipe holds */
+        Recorder noisy = new Recorder("i=0; while [ $i -lt 20000 ]; do echo error line $i >&2;"
+                + " i=$((i + 1)); done; echo done");
+        shell.add(noisy);
+
+        assertEquals(0, noisy.waitForFinish(5000));
+        assertEquals(20000, noisy.errors.size());
+        assertEquals("error line 19999", noisy.errors.get(19999));
+        assertEquals(Arrays.asList("done"), noisy.output);
+    }
+
+    @Test(timeout = 10000)
+    public void closeEndsTheShellProcesses() throws Exception {
+        /* The pid of the shell running the commands and of the dispatcher loop */
+        Recorder pids = new Recorder("echo $$ $PPID");
+        shell.add(pids);
+        assertEquals(0, pids.waitForFinish(5000));
+        String[] both = pids.output.get(0).split(" ");
+
+        shell.close();
+        assertTrue(shell.isClosed());
+        assertTrue("shell still running", awaitGone(both[0], 5000));
+        assertTrue("dispatcher still running", awaitGone(both[1], 5000));
+    }
+
+    @Test(timeout = 10000)
+    public void closeRunsCommandsAddedBefore() throws Exception {
+        Recorder first = new Recorder("sleep 0.2; echo first");
+        Recorder second = new Recorder("echo second");
+        shell.add(first);
+        shell.add(second);
+        shell.close();
+
+        assertEquals(0, second.waitForFinish(5000));
+        assertEquals(Arrays.asList("first"), first.output);
+        assertEquals(Arrays.asList("second"), second.output);
+    }
+
+    @Test(timeout = 10000)
+    public void cancelKillsOnlyTheRunningCommand() throws Exception {
+        Recorder running = new Recorder("sleep 30 & sleep 30; echo never");
+        Recorder next = new Recorder("echo next");
+        shell.add(running);
+        shell.add(next);
+        while (!running.isWritten()) {
+            Thread.sleep(10);
+        }
+
+        running.cancel();
+        assertEquals(-1, running.waitForFinish(5000));
+        assertEquals(0, next.waitForFinish(5000));
+        assertEquals(Arrays.asList("next"), next.output);
+        assertEquals(Collections.<String>emptyList(), running.output);
+    }
+
+    @Test(timeout = 10000)
+    public void cancelSkipsACommandNotWrittenYet() throws Exception {
+        Recorder blocker = new Recorder("sleep 0.5");
+        shell.add(blocker);
+        Recorder skipped = new Recorder("echo skipped");
+        skipped.cancel();
+        shell.add(skipped);
+
+        assertEquals(-1, skipped.waitForFinish(5000));
+        assertEquals(0, blocker.getExitCode());
+        assertTrue(skipped.output.isEmpty());
+        assertTrue(!skipped.isWritten());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentStartsShareOneSpawn() throws Exception {
+        ShellMetrics metrics = new ShellMetrics();
+        Shell.setListener(metrics);
+        final CountDownLatch go = new CountDownLatch(1);
+        final Shell[] started = new Shell[8];
+        Thread[] threads = new Thread[started.length];
+        try {
+            for (int i = 0; i < threads.length; i++) {
+                final int index = i;
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            go.await();
+                            started[index] = Shell.startCustomShell("/bin/sh", 5000);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            go.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            for (Shell shell : started) {
+                assertSame(started[0], shell);
+            }
+            assertEquals(1, metrics.getShellStart().getCount());
+        } finally {
+            Shell.setListener(null);
+            Shell.closeCustomShell();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SingleFlightTest {
+
+    /**
+     * A call counting its starts, leaving the future pending.
+     */
+    private static class CountingCall implements SingleFlight.Call {
+
+        final AtomicInteger starts = new AtomicInteger();
+
+        ResultFuture started;
+
+        public void start(ResultFuture future) {
+            starts.incrementAndGet();
+            started = future;
+        }
+    }
+
+    @Test
+    public void concurrentCallsShareOneExecution() {
+        SingleFlight flight = new SingleFlight();
+        CountingCall call = new CountingCall();
+
+        ResultFuture first = flight.run("id", call);
+        ResultFuture second = flight.run("id", call);
+        assertSame(first, second);
+        assertEquals(1, call.starts.get());
+        assertEquals(1, flight.size());
+    }
+
+    @Test
+    public void keysRunSeparately() {
+        SingleFlight flight = new SingleFlight();
+        CountingCall call = new CountingCall();
+
+        assertNotSame(flight.run("id", call), flight.run("ps", call));
+        assertEquals(2, call.starts.get());
+        assertEquals(2, flight.size());
+    }
+
+    @Test
+    public void completedKeyIsForgotten() {
+        SingleFlight flight = new SingleFlight();
+        CountingCall call = new CountingCall();
+        ResultFuture first = flight.run("id", call);
+
+        call.started.set(Result.newBuilder().setCommandSuccess().build());
+        assertEquals(0, flight.size());
+        assertNotSame(first, flight.run("id", call));
+        assertEquals(2, call.starts.get());
+    }
+
+    @Test
+    public void callCompletingRightAwayIsNotShared() {
+        SingleFlight flight = new SingleFlight();
+        SingleFlight.Call call = new SingleFlight.Call() {
+            public void start(ResultFuture future) {
+                future.set(Result.newBuilder().setFailed().build());
+            }
+        };
+
+        ResultFuture first = flight.run("id", call);
+        assertEquals(0, flight.size());
+        assertNotSame(first, flight.run("id", call));
+    }
+}
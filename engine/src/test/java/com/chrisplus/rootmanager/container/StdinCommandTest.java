@@ -0,0 +1,126 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs stdin commands with /bin/sh in place of su.
+ */
+public class StdinCommandTest {
+
+    private static StdinCommand command(String command) {
+        return new StdinCommand("/bin/sh", 5000, command);
+    }
+
+    private static InputStream lines(int count) throws IOException {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            data.append("line ").append(i).append('\n');
+        }
+        return new ByteArrayInputStream(data.toString().getBytes("UTF-8"));
+    }
+
+    @Test(timeout = 10000)
+    public void copiesExactlyTheGivenSize() throws Exception {
+        StdinCommand cat = command("cat");
+        byte[] data = "hello\nworld\nmore\n".getBytes("UTF-8");
+
+        assertEquals(0, cat.run(new ByteArrayInputStream(data), 12));
+        assertEquals(Arrays.asList("hello", "world"), cat.getOutputLines());
+    }
+
+    @Test(timeout = 10000)
+    public void readsOutputWhileFeeding() throws Exception {
+        /* Far more than a pipe holds, so the command blocks unless its output is read */
+        StdinCommand cat = command("cat; echo done >&2");
+        InputStream data = lines(100000);
+
+        assertEquals(0, cat.run(data, data.available()));
+        assertEquals(100001, cat.getOutputLines().size());
+        assertEquals("line 99999", cat.getOutputLines().get(99999));
+        assertEquals("done", cat.getOutputLines().get(100000));
+    }
+
+    @Test(timeout = 10000)
+    public void commandExitingEarlyIsNotAnError() throws Exception {
+        StdinCommand head = command("read -r first; echo \"$first\"; exit 3");
+        InputStream data = lines(100000);
+
+        assertEquals(3, head.run(data, data.available()));
+        assertEquals(Arrays.asList("line 0"), head.getOutputLines());
+    }
+
+    @Test(timeout = 10000)
+    public void shortStreamFails() throws Exception {
+        try {
+            command("cat").run(new ByteArrayInputStream(new byte[3]), 10);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Stream ended 7 bytes early", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void failureToReadTheDataIsRethrown() throws Exception {
+        InputStream broken = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Read error");
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Read error");
+            }
+        };
+        StdinCommand cat = command("cat");
+        try {
+            cat.run(broken, 10);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Read error", e.getMessage());
+        }
+        assertEquals(-1, cat.getExitCode());
+    }
+
+    @Test(timeout = 10000)
+    public void transfersTheRestOfAFile() throws Exception {
+        File file = File.createTempFile("stdin", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write("skip\nfirst\nsecond\n".getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            FileInputStream in = new FileInputStream(file);
+            try {
+                in.getChannel().position(5);
+                StdinCommand cat = command("cat");
+                assertEquals(0, cat.run(in.getChannel()));
+                assertEquals(Arrays.asList("first", "second"), cat.getOutputLines());
+                assertEquals(file.length(), in.getChannel().position());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(timeout = 10000, expected = TimeoutException.class)
+    public void slowCommandTimesOut() throws Exception {
+        new StdinCommand("/bin/sh", 200, "sleep 5").run(new ByteArrayInputStream(new byte[0]), 0);
+    }
+}
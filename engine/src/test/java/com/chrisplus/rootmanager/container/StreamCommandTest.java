@@ -0,0 +1,89 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streams commands on a private /bin/sh, the way RootManager streams them on a private su.
+ */
+public class StreamCommandTest {
+
+    private static final String COUNT =
+            "i=0; while [ $i -lt 100 ]; do echo $i; i=$((i + 1)); done";
+
+    @Test(timeout = 10000)
+    public void streamsAllLinesThroughASmallBuffer() throws Exception {
+        StreamCommand stream = new StreamCommand(2, "echo $$ $PPID; " + COUNT);
+        Shell shell = Shell.spawn("/bin/sh", 5000);
+        shell.add(stream);
+        shell.close();
+
+        String[] pids = stream.nextLine().split(" ");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), stream.nextLine());
+        }
+        assertNull(stream.nextLine());
+        assertTrue(stream.isEndOfStream());
+        assertEquals(0, stream.waitForFinish(5000));
+
+        /* The private shell ends with its only command */
+        assertTrue(ShellTest.awaitGone(pids[0], 5000));
+        assertTrue(ShellTest.awaitGone(pids[1], 5000));
+    }
+
+    @Test(timeout = 10000)
+    public void fullBufferHoldsTheCommandBack() throws Exception {
+        StreamCommand stream = new StreamCommand(2, COUNT);
+        Shell shell = Shell.spawn("/bin/sh", 5000);
+        shell.add(stream);
+        shell.close();
+
+        Thread.sleep(500);
+        assertFalse(stream.isFinished());
+        assertEquals("0", stream.nextLine());
+        assertEquals("1", stream.nextLine());
+
+        int count = 2;
+        while (stream.nextLine() != null) {
+            count++;
+        }
+        assertEquals(100, count);
+        assertTrue(stream.isFinished());
+    }
+
+    @Test(timeout = 10000)
+    public void closeCancelsTheCommand() throws Exception {
+        StreamCommand stream = new StreamCommand(2, "while :; do echo y; done");
+        ShellTest.Recorder next = new ShellTest.Recorder("echo next");
+        Shell shell = Shell.spawn("/bin/sh", 5000);
+        shell.add(stream);
+        shell.add(next);
+        shell.close();
+
+        assertEquals("y", stream.nextLine());
+        stream.close();
+        assertNull(stream.nextLine());
+        assertEquals(-1, stream.waitForFinish(5000));
+        assertEquals(0, next.waitForFinish(5000));
+    }
+
+    @Test(timeout = 10000)
+    public void nextLineTimesOutWithoutEndingTheStream() throws Exception {
+        StreamCommand stream = new StreamCommand("sleep 0.5; echo late");
+        Shell shell = Shell.spawn("/bin/sh", 5000);
+        shell.add(stream);
+        shell.close();
+
+        assertNull(stream.nextLine(50, TimeUnit.MILLISECONDS));
+        assertFalse(stream.isEndOfStream());
+        assertEquals("late", stream.nextLine(5, TimeUnit.SECONDS));
+        assertNull(stream.nextLine(5, TimeUnit.SECONDS));
+        assertTrue(stream.isEndOfStream());
+    }
+}
@@ -0,0 +1,37 @@
+package com.chrisplus.rootmanager.container;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class TailBufferTest {
+
+    @Test
+    public void keepsAllLinesBelowTheSize() {
+        TailBuffer tail = new TailBuffer(3);
+        assertEquals(Collections.<String>emptyList(), tail.getLines());
+
+        tail.addLine("a");
+        tail.addLine("b");
+        assertEquals(Arrays.asList("a", "b"), tail.getLines());
+    }
+
+    @Test
+    public void keepsTheLastLinesOldestFirst() {
+        TailBuffer tail = new TailBuffer(3);
+        for (int i = 0; i < 10; i++) {
+            tail.addLine(Integer.toString(i));
+        }
+
+        assertEquals(Arrays.asList("7", "8", "9"), tail.getLines());
+        assertEquals(10, tail.getLineCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyTail() {
+        new TailBuffer(0);
+    }
+}
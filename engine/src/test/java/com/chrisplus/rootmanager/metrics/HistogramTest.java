@@ -0,0 +1,79 @@
+package com.chrisplus.rootmanager.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 64; i++) {
+            histogram.record(i);
+        }
+        for (int i = 1; i <= 64; i++) {
+            assertEquals(i - 1, histogram.getValueAtPercentile(i * 100.0 / 64));
+        }
+    }
+
+    @Test
+    public void largeValuesStayWithinRelativeError() {
+        long[] values = {64, 65, 100, 1000, 12345, 999999, 123456789L, 1L << 40,
+                Long.MAX_VALUE / 3};
+        for (long value : values) {
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+            long bucket = histogram.getValueAtPercentile(50);
+            assertTrue("bucket " + bucket + " below " + value, bucket >= value);
+            assertTrue("bucket " + bucket + " too far from " + value,
+                    bucket - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void neighbouringValuesShareBuckets() {
+        Histogram histogram = new Histogram();
+        histogram.record(1024);
+        histogram.record(1055);
+        histogram.record(1056);
+        histogram.record(5000);
+        assertEquals(1055, histogram.getValueAtPercentile(50));
+        assertEquals(1087, histogram.getValueAtPercentile(75));
+    }
+
+    @Test
+    public void percentileIsCappedAtMaximum() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void tracksCountMinMaxAndMean() {
+        Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(-5);
+        histogram.record(20);
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(20, histogram.getMax());
+        assertEquals(10.0, histogram.getMean(), 0.0001);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        Histogram histogram = new Histogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        histogram.record(7);
+        assertEquals(7, histogram.getMin());
+    }
+}
@@ -0,0 +1,69 @@
+package com.chrisplus.rootmanager.metrics;
+
+import com.chrisplus.rootmanager.container.Command;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShellMetricsTest {
+
+    private static Command command(String command) {
+        return new Command(command) {
+
+            @Override
+            public void onUpdate(int id, String message) {
+
+            }
+
+            @Override
+            public void onFinished(int id) {
+
+            }
+        };
+    }
+
+    @Test
+    public void recordsCommandsPerProgram() {
+        ShellMetrics metrics = new ShellMetrics();
+        metrics.onCommandFinished(command("ls /data"), 1000000, 2000000, 3, 40, 0);
+        metrics.onCommandFinished(command("pm install a.apk"), 1000000, 5000000, 1, 7, 1);
+
+        assertEquals(2, metrics.getExecution().getCount());
+        assertEquals(1, metrics.getExecution("ls").getCount());
+        assertEquals(5000, metrics.getExecution("pm").getMax());
+        assertEquals(1, metrics.getCommandsFailed());
+        assertEquals(4, metrics.getOutputLines());
+    }
+
+    @Test
+    public void keepsTheLastPoolDispatch() {
+        ShellMetrics metrics = new ShellMetrics();
+        metrics.onPoolDispatch(1, 4, 9);
+
+        assertEquals(0.25, metrics.getPoolUtilization(), 0);
+        assertEquals(9, metrics.getPoolPending());
+    }
+
+    @Test
+    public void resetClearsHistogramsCountersAndPoolGauges() {
+        ShellMetrics metrics = new ShellMetrics();
+        metrics.onShellStarted("su", 1000000);
+        metrics.onShellFailed("su", 1000000, new Exception());
+        metrics.onCommandQueued(command("id"), 2);
+        metrics.onCommandFinished(command("id"), 1000, 1000, 1, 1, 1);
+        metrics.onPoolDispatch(2, 2, 5);
+
+        metrics.reset();
+        assertEquals(0, metrics.getShellStart().getCount());
+        assertEquals(0, metrics.getQueueDepth().getCount());
+        assertEquals(0, metrics.getExecution().getCount());
+        assertNull(metrics.getExecution("id"));
+        assertEquals(0, metrics.getShellFailures());
+        assertEquals(0, metrics.getCommandsFailed());
+        assertEquals(0, metrics.getOutputLines());
+        assertEquals(0, metrics.getPoolUtilization(), 0);
+        assertEquals(0, metrics.getPoolPending());
+    }
+}
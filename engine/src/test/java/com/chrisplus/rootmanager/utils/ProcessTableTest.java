@@ -0,0 +1,167 @@
+package com.chrisplus.rootmanager.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessTableTest {
+
+    private File proc;
+
+    @Before
+    public void setUp() throws IOException {
+        proc = File.createTempFile("proc", "");
+        assertTrue(proc.delete());
+        assertTrue(proc.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        delete(proc);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String stat(int pid, String comm, int ppid, long startTime) {
+        return pid + " (" + comm + ") S " + ppid
+                + " 0 0 0 -1 4194560 0 0 0 0 0 0 0 0 20 0 1 0 " + startTime + " 0 0\n";
+    }
+
+    private void addProcess(int pid, String comm, int ppid, int uid, long startTime,
+            String cmdline) throws IOException {
+        File dir = new File(proc, Integer.toString(pid));
+        assertTrue(dir.mkdir());
+        write(new File(dir, "stat"), stat(pid, comm, ppid, startTime));
+        write(new File(dir, "status"), "Name:\t" + comm + "\nUmask:\t0077\nUid:\t" + uid + "\t"
+                + uid + "\t" + uid + "\t" + uid + "\nGid:\t0\t0\t0\t0\n");
+        write(new File(dir, "cmdline"), cmdline);
+    }
+
+    @Test
+    public void readsProcessesSortedByPid() throws IOException {
+        addProcess(1, "init", 0, 0, 1, "/init\0");
+        addProcess(2, "kthreadd", 0, 0, 2, "");
+        addProcess(1234, "com.example.app", 300, 10057, 98765, "com.example.app\0\0\0");
+        addProcess(300, "main", 1, 0, 500, "zygote\0--start-system-server\0");
+        assertTrue(new File(proc, "self").mkdir());
+
+        ProcessTable table = new ProcessTable(proc, false);
+        assertTrue(table.refresh());
+
+        assertEquals(4, table.size());
+        int[] pids = new int[table.size()];
+        for (int i = 0; i < pids.length; i++) {
+            pids[i] = table.getPid(i);
+        }
+        assertArrayEquals(new int[]{1, 2, 300, 1234}, pids);
+
+        int app = table.indexOf(1234);
+        assertEquals(300, table.getParentPid(app));
+        assertEquals(10057, table.getUid(app));
+        assertEquals(98765, table.getStartTime(app));
+        assertEquals("com.example.app", table.getName(app));
+
+        assertEquals("zygote", table.getName(table.indexOf(300)));
+        assertEquals("kthreadd", table.getName(table.indexOf(2)));
+        assertTrue(table.getRefreshTime() > 0);
+    }
+
+    @Test
+    public void parsesCommWithSpacesAndParentheses() throws IOException {
+        addProcess(1, "init", 0, 0, 1, "/init\0");
+        addProcess(42, "a) (b c", 1, 1000, 777, "");
+
+        ProcessTable table = new ProcessTable(proc, false);
+        assertTrue(table.refresh());
+
+        int index = table.indexOf(42);
+        assertEquals("a) (b c", table.getName(index));
+        assertEquals(1, table.getParentPid(index));
+        assertEquals(777, table.getStartTime(index));
+        assertEquals(1000, table.getUid(index));
+    }
+
+    @Test
+    public void findsProcessesByExactNameOrFileName() throws IOException {
+        addProcess(1, "init", 0, 0, 1, "/init\0");
+        addProcess(10, "com.foo", 1, 10001, 5, "com.foo\0");
+        addProcess(11, "com.foo:remote", 1, 10001, 6, "com.foo:remote\0");
+        addProcess(12, "com.foo.bar", 1, 10002, 7, "com.foo.bar\0");
+        addProcess(13, "logd", 1, 1036, 8, "/system/bin/logd\0");
+
+        ProcessTable table = new ProcessTable(proc, false);
+        table.refresh();
+
+        assertArrayEquals(new int[]{10}, table.findPids("com.foo"));
+        assertArrayEquals(new int[]{13}, table.findPids("logd"));
+        assertArrayEquals(new int[0], table.findPids("com"));
+        assertTrue(table.contains("com.foo:remote"));
+        assertFalse(table.contains("bin/logd"));
+    }
+
+    @Test
+    public void restrictedListingIsIncomplete() throws IOException {
+        addProcess(1000, "app", 1, 10000, 5, "app\0");
+
+        ProcessTable table = new ProcessTable(proc, false);
+        assertFalse(table.refresh());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void parsesBatchedRootOutput() throws IOException {
+        addProcess(1, "init", 0, 0, 1, "/init\0");
+        ProcessTable table = new ProcessTable(proc, false);
+        table.refresh();
+
+        table.parseRootOutput(Arrays.asList(
+                stat(700, "sh", 1, 40).trim(),
+                stat(1, "init", 0, 1).trim(),
+                stat(55, "kworker/0:1", 2, 30).trim(),
+                "",
+                "55/status:Uid:\t0\t0\t0\t0",
+                "700/status:Uid:\t2000\t2000\t2000\t2000",
+                "",
+                "700/cmdline:/system/bin/sh\0-c\0echo",
+                "700/cmdline:second line",
+                "1/cmdline:/init\0"));
+
+        assertEquals(3, table.size());
+        int shell = table.indexOf(700);
+        assertEquals(2000, table.getUid(shell));
+        assertEquals(40, table.getStartTime(shell));
+        assertEquals("/system/bin/sh", table.getName(shell));
+
+        int worker = table.indexOf(55);
+        assertEquals(0, table.getUid(worker));
+        assertEquals("kworker/0:1", table.getName(worker));
+        assertEquals(0, table.indexOf(1));
+    }
+}
@@ -0,0 +1,163 @@
+package com.chrisplus.rootmanager.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Watches a fake proc directory.
+ */
+public class ProcessWatcherTest {
+
+    private static final long INTERVAL = 20;
+
+    private File proc;
+
+    private ProcessWatcher watcher;
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    private final ProcessWatcher.Listener listener = new ProcessWatcher.Listener() {
+        public void onProcessStarted(int pid, int uid, String name) {
+            events.add("started " + pid + " " + uid + " " + name);
+        }
+
+        public void onProcessExited(int pid, int uid, String name) {
+            events.add("exited " + pid + " " + uid + " " + name);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        proc = File.createTempFile("proc", "");
+        assertTrue(proc.delete());
+        assertTrue(proc.mkdir());
+        addProcess(1, "init", 0, 1);
+        watcher = new ProcessWatcher(INTERVAL, proc, false);
+    }
+
+    @After
+    public void tearDown() {
+        watcher.removeListener(listener);
+        delete(proc);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Add or replace a process. Its files are written aside and moved in at once, so the watcher
+     * never reads a half written process.
+     */
+    private void addProcess(int pid, String name, int uid, long startTime) throws IOException {
+        File dir = new File(proc, "." + pid);
+        assertTrue(dir.mkdir());
+        write(new File(dir, "stat"), pid + " (" + name + ") S 1 0 0 0 -1 4194560 0 0 0 0 0 0 0 0"
+                + " 20 0 1 0 " + startTime + " 0 0\n");
+        write(new File(dir, "status"), "Name:\t" + name + "\nUid:\t" + uid + "\t" + uid + "\t"
+                + uid + "\t" + uid + "\n");
+        write(new File(dir, "cmdline"), name + "\0");
+        removeProcess(pid);
+        assertTrue(dir.renameTo(new File(proc, Integer.toString(pid))));
+    }
+
+    private void removeProcess(int pid) {
+        delete(new File(proc, Integer.toString(pid)));
+    }
+
+    /**
+     * Wait until the watcher has read its baseline.
+     */
+    private void awaitBaseline() throws InterruptedException {
+        Thread.sleep(10 * INTERVAL);
+    }
+
+    private String nextEvent() throws InterruptedException {
+        return events.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 10000)
+    public void reportsStartsAndExitsAfterTheBaseline() throws Exception {
+        watcher.addListener(listener);
+        assertTrue(watcher.isRunning());
+        awaitBaseline();
+        assertNull(events.poll());
+
+        addProcess(1234, "com.example.app", 10057, 500);
+        assertEquals("started 1234 10057 com.example.app", nextEvent());
+        removeProcess(1234);
+        assertEquals("exited 1234 10057 com.example.app", nextEvent());
+    }
+
+    @Test(timeout = 10000)
+    public void reportsReusedPidsAndRenamesAsExitAndStart() throws Exception {
+        addProcess(300, "zygote", 0, 100);
+        addProcess(400, "old", 0, 200);
+        watcher.addListener(listener);
+        awaitBaseline();
+
+        /* An app forked from the zygote takes its own name */
+        addProcess(300, "com.example.app", 0, 100);
+        assertEquals("exited 300 0 zygote", nextEvent());
+        assertEquals("started 300 0 com.example.app", nextEvent());
+
+        addProcess(400, "new", 0, 900);
+        assertEquals("exited 400 0 old", nextEvent());
+        assertEquals("started 400 0 new", nextEvent());
+    }
+
+    @Test(timeout = 10000)
+    public void filtersByNameAndUid() throws Exception {
+        watcher.addListener(listener, "com.example.app");
+        watcher.addListener(listener, 10099);
+        awaitBaseline();
+
+        addProcess(1000, "com.other.app", 10001, 500);
+        addProcess(1001, "com.example.app", 10057, 500);
+        addProcess(1002, "com.third.app", 10099, 500);
+        assertEquals("started 1001 10057 com.example.app", nextEvent());
+        assertEquals("started 1002 10099 com.third.app", nextEvent());
+        Thread.sleep(10 * INTERVAL);
+        assertNull(events.poll());
+    }
+
+    @Test(timeout = 10000)
+    public void stopsWithoutListeners() throws Exception {
+        watcher.addListener(listener);
+        watcher.removeListener(listener);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (watcher.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(INTERVAL);
+        }
+        assertFalse(watcher.isRunning());
+    }
+}
@@ -0,0 +1,62 @@
+package com.chrisplus.rootmanager.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShellUtilsTest {
+
+    private final List<String> logs = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        ShellUtils.setLogger(new Logger() {
+            public void log(Level level, String tag, String message) {
+                logs.add(level + " " + tag + " " + message);
+            }
+        });
+        ShellUtils.setLogLevel(Logger.Level.INFO);
+    }
+
+    @After
+    public void tearDown() {
+        ShellUtils.setLogger(null);
+        ShellUtils.setLogLevel(Logger.Level.DEBUG);
+        ShellUtils.setRedactCommands(true);
+    }
+
+    @Test
+    public void dropsLogsBelowTheLevel() {
+        assertFalse(ShellUtils.isLoggable(Logger.Level.DEBUG));
+        assertTrue(ShellUtils.isLoggable(Logger.Level.WARN));
+
+        ShellUtils.Log("dropped");
+        ShellUtils.log(Logger.Level.DEBUG, "Tag", "Dropped %s", 1);
+        ShellUtils.log(Logger.Level.WARN, "Tag", "Retry %s in %sms", 2, 400L);
+        ShellUtils.log(Logger.Level.ERROR, null, "Failed: %s", "reason");
+
+        assertEquals(Arrays.asList("WARN RootManager::Tag Retry 2 in 400ms",
+                "ERROR RootManager Failed: reason"), logs);
+    }
+
+    @Test
+    public void nothingIsLoggableWithoutLogger() {
+        ShellUtils.setLogger(null);
+        assertFalse(ShellUtils.isLoggable(Logger.Level.ERROR));
+    }
+
+    @Test
+    public void redactsCommandsToTheirProgram() {
+        assertEquals("pm <24 chars>", ShellUtils.redact(" pm install -r /a/b.apk "));
+        ShellUtils.setRedactCommands(false);
+        assertEquals("pm install", ShellUtils.redact("pm install"));
+    }
+}
@@ -1,10 +1,23 @@
 package com.chrisplus.rootmanager;
 
+import com.chrisplus.rootmanager.container.BinaryCommand;
 import com.chrisplus.rootmanager.container.Command;
+import com.chrisplus.rootmanager.container.KillCommand;
+import com.chrisplus.rootmanager.container.OutputBuffer;
+import com.chrisplus.rootmanager.container.OutputSink;
 import com.chrisplus.rootmanager.container.Result;
 import com.chrisplus.rootmanager.container.Result.ResultBuilder;
+import com.chrisplus.rootmanager.container.ResultCache;
+import com.chrisplus.rootmanager.container.ResultFuture;
 import com.chrisplus.rootmanager.container.Shell;
+import com.chrisplus.rootmanager.container.ShellPool;
+import com.chrisplus.rootmanager.container.SingleFlight;
+import com.chrisplus.rootmanager.container.StdinCommand;
+import com.chrisplus.rootmanager.container.StreamCommand;
+import com.chrisplus.rootmanager.container.TailBuffer;
 import com.chrisplus.rootmanager.exception.PermissionException;
+import com.chrisplus.rootmanager.utils.ProcessTable;
+import com.chrisplus.rootmanager.utils.ProcessWatcher;
 import com.chrisplus.rootmanager.utils.Remounter;
 import com.chrisplus.rootmanager.utils.RootUtils;
 
@@ -12,20 +25,42 @@ import android.text.TextUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public class RootManager {
 
     private static RootManager instance;
 
-    private static boolean accessRoot = false;
-
     private Boolean hasRooted = null;
 
     private boolean hasGivenPermission = false;
 
     private long lastPermissionCheck = -1;
 
+    private final SingleFlight queries = new SingleFlight();
+
+    private final ResultCache queryCache = new ResultCache(Constants.QUERY_CACHE_SIZE);
+
+    private volatile long processListCacheTime = Constants.PROCESS_LIST_CACHE_TIME;
+
+    private final ProcessTable processTable = new ProcessTable();
+
+    private final ProcessWatcher processWatcher = new ProcessWatcher();
+
+    static {
+        RootUtils.installLogger();
+    }
+
     private RootManager() {
 
     }
@@ -86,6 +121,28 @@ public class RootManager {
         return hasGivenPermission;
     }
 
+    /**
+     * Set how many root shells can run commands concurrently.
+     * <p>
+     * Commands are dispatched to the least loaded root shell, and a new shell is only spawned when
+     * all live shells are busy. The default pool holds a single root shell.
+     * </p>
+     *
+     * @param minSize the number of root shells kept alive.
+     * @param maxSize the maximum number of concurrent root shells.
+     */
+    public void setShellPoolSize(int minSize, int maxSize) {
+        ShellPool.setRootPoolSize(minSize, maxSize);
+    }
+
+    /**
+     * Start the root shells in the background, i.e., when the app starts, so the first root
+     * operation does not wait for <i>su</i>. This might lead to the superuser popup.
+     */
+    public void prewarm() {
+        ShellPool.getRootPool().prewarm();
+    }
+
     /**
      * Install an app on the device.
      * <p>
@@ -122,67 +179,191 @@ public class RootManager {
 
         RootUtils.checkUIThread();
 
-        final ResultBuilder builder = Result.newBuilder();
-
         if (TextUtils.isEmpty(apkPath)) {
-            return builder.setFailed().build();
+            return Result.newBuilder().setFailed().build();
         }
 
-        String command = Constants.COMMAND_INSTALL;
-        if (RootUtils.isNeedPathSDK()) {
-            command = Constants.COMMAND_INSTALL_PATCH + command;
+        ResultFuture future = new ResultFuture();
+        return waitForResult(newInstallCommand(apkPath, installLocation, future), future);
+    }
+
+    /**
+     * Install an app streamed from a stream, i.e., a downloaded APK in the private storage of
+     * the app, without copying it to a path readable by <i>"pm"</i> first.
+     * <p>
+     * The bytes are fed to <i>"pm install -S"</i> through the standard input of a root process,
+     * which needs Android 5.0 and upper. Do NOT call this function on UI thread.
+     * </p>
+     *
+     * @param in   the APK data.
+     * @param size the size of the APK in bytes.
+     * @return the result {@link Result} of running the command.
+     */
+    public Result installPackage(final InputStream in, final long size) {
+        RootUtils.checkUIThread();
+
+        if (in == null || size <= 0 || !RootUtils.isLollipopUpper()) {
+            return Result.newBuilder().setFailed().build();
         }
 
-        command = command + apkPath;
+        return runInstall(new StdinCommand(Constants.COMMAND_INSTALL_STDIN + size),
+                new InstallFeeder() {
+                    public int feed(StdinCommand command) throws IOException,
+                            InterruptedException, TimeoutException {
+                        return command.run(in, size);
+                    }
+                });
+    }
 
-        if (TextUtils.isEmpty(installLocation)) {
-            if (installLocation.equalsIgnoreCase("ex")) {
-                command = command + Constants.COMMAND_INSTALL_LOCATION_EXTERNAL;
-            } else if (installLocation.equalsIgnoreCase("in")) {
-                command = command + Constants.COMMAND_INSTALL_LOCATION_INTERNAL;
-            }
+    /**
+     * Install an app from the current position of a file channel to its end, see
+     * {@link #installPackage(InputStream, long)}. The file is transferred by the channel, i.e.,
+     * the channel of a {@link java.io.FileInputStream}.
+     *
+     * @param channel the APK file.
+     * @return the result {@link Result} of running the command.
+     */
+    public Result installPackage(final FileChannel channel) {
+        RootUtils.checkUIThread();
+
+        long size;
+        try {
+            size = channel == null ? 0 : channel.size() - channel.position();
+        } catch (IOException e) {
+            e.printStackTrace();
+            size = 0;
+        }
+        if (size <= 0 || !RootUtils.isLollipopUpper()) {
+            return Result.newBuilder().setFailed().build();
         }
 
-        final StringBuilder infoSb = new StringBuilder();
-        Command commandImpl = new Command(command) {
+        return runInstall(new StdinCommand(Constants.COMMAND_INSTALL_STDIN + size),
+                new InstallFeeder() {
+                    public int feed(StdinCommand command) throws IOException,
+                            InterruptedException, TimeoutException {
+                        return command.run(channel);
+                    }
+                });
+    }
 
-            @Override
-            public void onUpdate(int id, String message) {
-                infoSb.append(message + "\n");
+    /**
+     * Install an app on the device without waiting for the installation.
+     *
+     * @param apkPath the APK file path i.e., <I>"/sdcard/Tech_test.apk"</I> is OK. ASCII is
+     *                supported.
+     * @return the pending result {@link ResultFuture} of running the command.
+     * @see #installPackage(String)
+     */
+    public ResultFuture installPackageAsync(String apkPath) {
+        return installPackageAsync(apkPath, "a");
+    }
+
+    /**
+     * Install an app on the specific location without waiting for the installation.
+     *
+     * @param apkPath         the APK file path i.e., <I>"/sdcard/Tech_test.apk"</I> is OK. ASCII
+     *                        is supported.
+     * @param installLocation the location of this installation.
+     * @return the pending result {@link ResultFuture} of running the command.
+     * @see #installPackage(String, String)
+     */
+    public ResultFuture installPackageAsync(String apkPath, String installLocation) {
+        if (TextUtils.isEmpty(apkPath)) {
+            return ResultFuture.completed(Result.newBuilder().setFailed().build());
+        }
+
+        ResultFuture future = new ResultFuture();
+        return submit(newInstallCommand(apkPath, installLocation, future), future);
+    }
+
+    /**
+     * What a bulk operation does after one of its items failed.
+     */
+    public enum FailurePolicy {
+        /**
+         * Go on with the remaining items.
+         */
+        CONTINUE,
+        /**
+         * Cancel the remaining items, which finish as
+         * {@link Result.ResultEnum#INSTALL_CANCELLED}.
+         */
+        STOP
+    }
+
+    /**
+     * Install many apps, see {@link #installPackagesAsync(List, FailurePolicy)}, and wait for all
+     * of them. Do NOT call this function on UI thread.
+     *
+     * @param apkPaths the APK file paths.
+     * @param policy   what to do after an installation failed.
+     * @return the result of each installation, in the same order.
+     */
+    public List<Result> installPackages(List<String> apkPaths, FailurePolicy policy) {
+        RootUtils.checkUIThread();
+
+        List<ResultFuture> futures = installPackagesAsync(apkPaths, policy);
+        List<Result> results = new ArrayList<>(futures.size());
+        for (ResultFuture future : futures) {
+            results.add(waitForResult(future));
+        }
+        return results;
+    }
+
+    /**
+     * Install many apps without waiting for them.
+     * <p>
+     * The installations are queued as one batch and pipelined through a shell of the pool, so
+     * the next <i>"pm install"</i> starts as soon as the previous one ends. Each future completes
+     * as its installation ends, register a {@link ResultFuture.Callback} to be told about each
+     * app. The outcome of an installation is its status, the exit code and the output of
+     * <i>"pm"</i>.
+     * </p>
+     *
+     * @param apkPaths the APK file paths.
+     * @param policy   what to do after an installation failed.
+     * @return the pending result of each installation, in the same order.
+     */
+    public List<ResultFuture> installPackagesAsync(List<String> apkPaths, FailurePolicy policy) {
+        final List<ResultFuture> futures = new ArrayList<>(apkPaths.size());
+        final List<Command> commands = new ArrayList<>(apkPaths.size());
+        /* The command of each future, null for an illegal path */
+        final List<Command> commandOf = new ArrayList<>(apkPaths.size());
+        for (String apkPath : apkPaths) {
+            ResultFuture future = new ResultFuture();
+            futures.add(future);
+            if (TextUtils.isEmpty(apkPath)) {
+                future.set(Result.newBuilder().setFailed().build());
+                commandOf.add(null);
+                continue;
             }
+            Command command = newInstallCommand(apkPath, null, future);
+            future.setCommand(command);
+            commands.add(command);
+            commandOf.add(command);
+        }
 
-            @Override
-            public void onFinished(int id) {
-                String finalInfo = infoSb.toString();
-                if (TextUtils.isEmpty(finalInfo)) {
-                    builder.setInstallFailed();
-                } else {
-                    if (finalInfo.contains("success") || finalInfo.contains("Success")) {
-                        builder.setInstallSuccess();
-                    } else if (finalInfo.contains("failed") || finalInfo.contains("FAILED")) {
-                        if (finalInfo.contains("FAILED_INSUFFICIENT_STORAGE")) {
-                            builder.setInsallFailedNoSpace();
-                        } else if (finalInfo.contains("FAILED_INCONSISTENT_CERTIFICATES")) {
-                            builder.setInstallFailedWrongCer();
-                        } else if (finalInfo.contains("FAILED_CONTAINER_ERROR")) {
-                            builder.setInstallFailedWrongCer();
-                        } else {
-                            builder.setInstallFailed();
+        if (policy == FailurePolicy.STOP) {
+            for (int i = 0; i < futures.size(); i++) {
+                final List<Command> rest = commandOf.subList(i + 1, commandOf.size());
+                futures.get(i).addCallback(new ResultFuture.Callback() {
+                    public void onResult(Result result) {
+                        if (!result.getResult()) {
+                            for (Command command : rest) {
+                                if (command != null) {
+                                    command.cancel();
+                                }
+                            }
                         }
-
-                    } else {
-                        builder.setInstallFailed();
                     }
-                }
+                });
             }
+        }
 
-        };
-
+        final ResultBuilder builder = Result.newBuilder();
         try {
-            Shell.startRootShell().add(commandImpl).waitForFinish();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            builder.setCommandFailedInterrupted();
+            ShellPool.getRootPool().addAll(commands);
+            return futures;
         } catch (IOException e) {
             e.printStackTrace();
             builder.setCommandFailed();
@@ -192,10 +373,16 @@ public class RootManager {
         } catch (PermissionException e) {
             e.printStackTrace();
             builder.setCommandFailedDenied();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
         }
 
-        return builder.build();
-
+        Result failed = builder.build();
+        for (ResultFuture future : futures) {
+            future.set(failed);
+        }
+        return futures;
     }
 
     /**
@@ -211,55 +398,28 @@ public class RootManager {
     public Result uninstallPackage(String packageName) {
         RootUtils.checkUIThread();
 
-        final ResultBuilder builder = Result.newBuilder();
-
         if (TextUtils.isEmpty(packageName)) {
-            return builder.setFailed().build();
+            return Result.newBuilder().setFailed().build();
         }
 
-        String command = Constants.COMMAND_UNINSTALL + packageName;
-        final StringBuilder infoSb = new StringBuilder();
-
-        Command commandImpl = new Command(command) {
-
-            @Override
-            public void onUpdate(int id, String message) {
-                infoSb.append(message + "\n");
-            }
-
-            @Override
-            public void onFinished(int id) {
-                String finalInfo = infoSb.toString();
-                if (TextUtils.isEmpty(finalInfo)) {
-                    builder.setUninstallFailed();
-                } else {
-                    if (finalInfo.contains("Success") || finalInfo.contains("success")) {
-                        builder.setUninstallSuccess();
-                    } else {
-                        builder.setUninstallFailed();
-                    }
-                }
-            }
-
-        };
+        ResultFuture future = new ResultFuture();
+        return waitForResult(newUninstallCommand(packageName, future), future);
+    }
 
-        try {
-            Shell.startRootShell().add(commandImpl).waitForFinish();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            builder.setCommandFailedInterrupted();
-        } catch (IOException e) {
-            e.printStackTrace();
-            builder.setCommandFailed();
-        } catch (TimeoutException e) {
-            e.printStackTrace();
-            builder.setCommandFailedTimeout();
-        } catch (PermissionException e) {
-            e.printStackTrace();
-            builder.setCommandFailedDenied();
+    /**
+     * Uninstall an app by its package name without waiting for it.
+     *
+     * @param packageName the app's package name.
+     * @return the pending result {@link ResultFuture} of running the command.
+     * @see #uninstallPackage(String)
+     */
+    public ResultFuture uninstallPackageAsync(String packageName) {
+        if (TextUtils.isEmpty(packageName)) {
+            return ResultFuture.completed(Result.newBuilder().setFailed().build());
         }
 
-        return builder.build();
+        ResultFuture future = new ResultFuture();
+        return submit(newUninstallCommand(packageName, future), future);
     }
 
     /**
@@ -405,112 +565,400 @@ public class RootManager {
 
     /**
      * Run raw commands in default shell.
+     * <p>
+     * The standard output goes to {@link Result#getMessage()} and the standard error to
+     * {@link Result#getErrorMessage()}.
+     * </p>
      *
      * @param command the command string.
      * @return the result {@link Result} of running the command.
      */
     public Result runCommand(String command) {
+        return runCommand(command, Command.Priority.NORMAL);
+    }
+
+    /**
+     * Run raw commands in default shell with a scheduling priority, see
+     * {@link Command.Priority}.
+     *
+     * @param command  the command string.
+     * @param priority the priority.
+     * @return the result {@link Result} of running the command.
+     */
+    public Result runCommand(String command, Command.Priority priority) {
 
-        final ResultBuilder builder = Result.newBuilder();
         if (TextUtils.isEmpty(command)) {
-            return builder.setFailed().build();
+            return Result.newBuilder().setFailed().build();
         }
 
-        final StringBuilder infoSb = new StringBuilder();
-        Command commandImpl = new Command(command) {
-
-            @Override
-            public void onUpdate(int id, String message) {
-                infoSb.append(message + "\n");
-            }
+        ResultFuture future = new ResultFuture();
+        return waitForResult(newCustomCommand(command, future).setPriority(priority), future);
+    }
 
-            @Override
-            public void onFinished(int id) {
-                builder.setCustomMessage(infoSb.toString());
-            }
+    /**
+     * Run a read-only command in default shell, i.e., <i>"ps"</i> or <i>"id"</i>.
+     * <p>
+     * Concurrent calls with the same command share one execution and get the same result, so
+     * the command must not change anything on the device.
+     * </p>
+     *
+     * @param command the command string.
+     * @return the result {@link Result} of running the command.
+     */
+    public Result runQuery(String command) {
+        return runQuery(command, Command.Priority.NORMAL);
+    }
 
-        };
+    /**
+     * Run a read-only command in default shell with a scheduling priority, see
+     * {@link #runQuery(String)}.
+     *
+     * @param command  the command string.
+     * @param priority the priority, only used by the call starting the execution.
+     * @return the result {@link Result} of running the command.
+     */
+    public Result runQuery(final String command, final Command.Priority priority) {
 
-        try {
-            Shell.startRootShell().add(commandImpl).waitForFinish();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            builder.setCommandFailedInterrupted();
-        } catch (IOException e) {
-            e.printStackTrace();
-            builder.setCommandFailed();
-        } catch (TimeoutException e) {
-            e.printStackTrace();
-            builder.setCommandFailedTimeout();
-        } catch (PermissionException e) {
-            e.printStackTrace();
-            builder.setCommandFailedDenied();
+        if (TextUtils.isEmpty(command)) {
+            return Result.newBuilder().setFailed().build();
         }
 
-        return builder.build();
+        ResultFuture future = queries.run(command, new SingleFlight.Call() {
+            public void start(ResultFuture future) {
+                submit(newCustomCommand(command, future).setPriority(priority), future);
+            }
+        });
+        return waitForResult(future);
     }
 
     /**
-     * Get screen shot.
+     * Run a read-only command in default shell, reusing a result of the same command younger than
+     * the given age, see {@link #runQuery(String)}.
+     * <p>
+     * Only successful results are cached. Installing, uninstalling and killing processes through
+     * this class clears the cache, other changes can be announced by
+     * {@link #invalidateQueryCache()}.
+     * </p>
      *
-     * @param path the path with file name and extend name.
-     * @return the operation result.
+     * @param command  the command string.
+     * @param priority the priority.
+     * @param maxAge   how long a result can be reused in milliseconds, 0 to disable caching.
+     * @return the result {@link Result} of running the command.
      */
-    public boolean screenCap(String path) {
+    public Result runQuery(String command, Command.Priority priority, long maxAge) {
+        if (maxAge <= 0 || TextUtils.isEmpty(command)) {
+            return runQuery(command, priority);
+        }
 
-        if (TextUtils.isEmpty(path)) {
-            return false;
+        Result cached = queryCache.get(command);
+        if (cached != null) {
+            return cached;
         }
-        Result res = runCommand(Constants.COMMAND_SCREENCAP + path);
-        RootUtils.Log((res == null) + "");
 
-        return res.getResult();
+        long generation = queryCache.getGeneration();
+        Result result = runQuery(command, priority);
+        if (result.getResult()) {
+            queryCache.put(command, result, maxAge, generation);
+        }
+        return result;
     }
 
     /**
-     * Record screen for 30s. This function is ONLY supported on Android 4.4 and upper.
-     *
-     * @param path the path with file name and extend name.
-     * @return the operation result.
+     * Drop every cached query result and the cached process list, i.e., after changing the
+     * device by custom commands.
      */
-    public boolean screenRecord(String path) {
-        return screenRecord(path, Constants.SCREENRECORD_BITRATE_DEFAULT,
-                Constants.SCREENRECORD_TIMELIMIT_DEFAULT);
+    public void invalidateQueryCache() {
+        queryCache.invalidateAll();
+        processTable.invalidate();
     }
 
     /**
-     * Record screen. This function is ONLY supported on Android 4.4 and upper.
+     * Set how long {@link #isProcessRunning(String)} reuses the process list.
      *
-     * @param path    the path with file name and extend name.
-     * @param bitRate the bate rate in bps, i.e., 4000000 for 4M bps.
-     * @param time    the recording time in seconds
-     * @return the operation result.
+     * @param maxAge the time in milliseconds, 0 to always read a fresh list.
      */
-
-    public boolean screenRecord(String path, long bitRate, long time) {
-
-        if (!RootUtils.isKitKatUpper() || TextUtils.isEmpty(path)) {
-            return false;
-        }
-        Result res = runCommand(Constants.COMMAND_SCREENRECORD + "--bit-rate " + bitRate
-                + " --time-limit " + time + " " + path);
-        return res.getResult();
+    public void setProcessListCacheTime(long maxAge) {
+        processListCacheTime = maxAge;
     }
 
     /**
-     * Check if a process is running.
+     * Run raw commands in default shell without waiting for them.
+     * <p>
+     * The returned future is completed by the shell once the command finishes, register a
+     * {@link ResultFuture.Callback} to be notified without blocking a thread.
+     * </p>
      *
-     * @param processName the name of process. For user app, the process name is
-     *                    its package name.
-     * @return whether this process is running.
+     * @param command the command string.
+     * @return the pending result {@link ResultFuture} of running the command.
      */
-    public boolean isProcessRunning(String processName) {
+    public ResultFuture runCommandAsync(String command) {
 
-        if (TextUtils.isEmpty(processName)) {
-            return false;
+        if (TextUtils.isEmpty(command)) {
+            return ResultFuture.completed(Result.newBuilder().setFailed().build());
         }
-        Result infos = runCommand(Constants.COMMAND_PS);
-        return infos.getMessage().contains(processName);
+
+        ResultFuture future = new ResultFuture();
+        return submit(newCustomCommand(command, future), future);
+    }
+
+    /**
+     * Run a batch of raw commands in default shell.
+     * <p>
+     * The commands are written to one shell with a single write and pipeline through it, which
+     * is much cheaper than running many small commands one by one.
+     * </p>
+     *
+     * @param commands the command strings.
+     * @return the results {@link Result} of running the commands, in the same order.
+     */
+    public List<Result> runCommands(List<String> commands) {
+        List<ResultFuture> futures = new ArrayList<>(commands.size());
+        List<Command> commandImpls = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            ResultFuture future = new ResultFuture();
+            futures.add(future);
+            commandImpls.add(newCustomCommand(command, future));
+        }
+
+        final ResultBuilder builder = Result.newBuilder();
+        List<Result> results = new ArrayList<>(commands.size());
+        try {
+            ShellPool.getRootPool().addAll(commandImpls);
+            for (int i = 0; i < commandImpls.size(); i++) {
+                commandImpls.get(i).waitForFinish();
+                results.add(futures.get(i).getNow(builder.setCommandFailedTimeout().build()));
+            }
+            return results;
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            builder.setCommandFailedInterrupted();
+        } catch (IOException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            builder.setCommandFailedTimeout();
+        } catch (PermissionException e) {
+            e.printStackTrace();
+            builder.setCommandFailedDenied();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
+        }
+
+        Result failed = builder.build();
+        while (results.size() < commands.size()) {
+            results.add(failed);
+        }
+        return results;
+    }
+
+    /**
+     * Run raw commands in default shell and read the output while it is produced.
+     * <p>
+     * Suitable for commands with large or endless output, i.e., <i>"logcat"</i>. The command is
+     * throttled when the caller reads slower than the command writes. The command runs in a
+     * root shell of its own, which exits once the command has finished. Call
+     * {@link StreamCommand#close()} to cancel the command and discard the rest of the output.
+     * </p>
+     *
+     * @param command the command string.
+     * @return the stream of output lines, or null if the command is empty.
+     */
+    public StreamCommand streamCommand(String command) {
+
+        if (TextUtils.isEmpty(command)) {
+            return null;
+        }
+
+        StreamCommand commandImpl = new StreamCommand(command);
+        try {
+            Shell shell = Shell.startPrivateRootShell();
+            shell.add(commandImpl);
+            shell.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            commandImpl.setExitCode(-1);
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            commandImpl.setExitCode(-1);
+        } catch (PermissionException e) {
+            e.printStackTrace();
+            commandImpl.setExitCode(-1);
+        }
+
+        return commandImpl;
+    }
+
+    /**
+     * Run raw commands in default shell and hand its output lines to a sink instead of keeping
+     * them in the result.
+     * <p>
+     * Use an {@link OutputBuffer} for large outputs, which spills to a file beyond a memory
+     * threshold, or a {@link TailBuffer} to keep only the last lines. Do NOT call this function
+     * on UI thread.
+     * </p>
+     *
+     * @param command the command string.
+     * @param sink    where the output lines of the command go.
+     * @return the result {@link Result} of running the command, successful if the command exits
+     * with zero, with the standard error as the error message.
+     */
+    public Result runCommand(String command, OutputSink sink) {
+
+        if (TextUtils.isEmpty(command) || sink == null) {
+            return Result.newBuilder().setFailed().build();
+        }
+
+        ResultFuture future = new ResultFuture();
+        return waitForResult(newSinkCommand(command, sink, future), future);
+    }
+
+    /**
+     * Run raw commands in default shell and copy its binary output to a stream.
+     * <p>
+     * The output is not decoded, so this is safe for images, databases or archives. Do NOT call
+     * this function on UI thread.
+     * </p>
+     *
+     * @param command the command string.
+     * @param out     where the output of the command goes.
+     * @return the result {@link Result} of running the command, successful if the command exits
+     * with zero.
+     */
+    public Result runCommand(String command, OutputStream out) {
+
+        final ResultBuilder builder = Result.newBuilder();
+        if (TextUtils.isEmpty(command) || out == null) {
+            return builder.setFailed().build();
+        }
+
+        BinaryCommand commandImpl = new BinaryCommand(out, command);
+
+        try {
+            if (ShellPool.getRootPool().add(commandImpl).waitForFinish() == 0) {
+                builder.setCommandSuccess();
+            } else {
+                builder.setCommandFailed();
+            }
+            builder.setErrorMessage(commandImpl.getErrorMessage()).setCommand(commandImpl);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            builder.setCommandFailedInterrupted();
+        } catch (IOException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            builder.setCommandFailedTimeout();
+        } catch (PermissionException e) {
+            e.printStackTrace();
+            builder.setCommandFailedDenied();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Read a file as the superuser, i.e., a database of other apps.
+     *
+     * @param path the path of the file.
+     * @param out  where the content of the file goes.
+     * @return the operation result.
+     */
+    public boolean readFile(String path, OutputStream out) {
+        if (TextUtils.isEmpty(path)) {
+            return false;
+        }
+        return runCommand("cat '" + path + "'", out).getResult();
+    }
+
+    /**
+     * Get screen shot in PNG format without saving it to a file first.
+     *
+     * @param out where the PNG image goes.
+     * @return the operation result.
+     */
+    public boolean screenCap(OutputStream out) {
+        return runCommand(Constants.COMMAND_SCREENCAP + "-p", out).getResult();
+    }
+
+    /**
+     * Get screen shot.
+     *
+     * @param path the path with file name and extend name.
+     * @return the operation result.
+     */
+    public boolean screenCap(String path) {
+
+        if (TextUtils.isEmpty(path)) {
+            return false;
+        }
+        Result res = runCommand(Constants.COMMAND_SCREENCAP + path);
+        RootUtils.Log((res == null) + "");
+
+        return res.getResult();
+    }
+
+    /**
+     * Record screen for 30s. This function is ONLY supported on Android 4.4 and upper.
+     *
+     * @param path the path with file name and extend name.
+     * @return the operation result.
+     */
+    public boolean screenRecord(String path) {
+        return screenRecord(path, Constants.SCREENRECORD_BITRATE_DEFAULT,
+                Constants.SCREENRECORD_TIMELIMIT_DEFAULT);
+    }
+
+    /**
+     * Record screen. This function is ONLY supported on Android 4.4 and upper.
+     *
+     * @param path    the path with file name and extend name.
+     * @param bitRate the bate rate in bps, i.e., 4000000 for 4M bps.
+     * @param time    the recording time in seconds
+     * @return the operation result.
+     */
+
+    public boolean screenRecord(String path, long bitRate, long time) {
+
+        if (!RootUtils.isKitKatUpper() || TextUtils.isEmpty(path)) {
+            return false;
+        }
+        Result res = runCommand(Constants.COMMAND_SCREENRECORD + "--bit-rate " + bitRate
+                + " --time-limit " + time + " " + path, Command.Priority.BULK);
+        return res.getResult();
+    }
+
+    /**
+     * Check if a process is running.
+     *
+     * @param processName the name of process. For user app, the process name is
+     *                    its package name.
+     * @return whether a process of exactly this name is running, the process list might be
+     * cached, see {@link #setProcessListCacheTime(long)}.
+     */
+    public boolean isProcessRunning(String processName) {
+
+        if (TextUtils.isEmpty(processName)) {
+            return false;
+        }
+        return getProcessTable(processListCacheTime).contains(processName);
+    }
+
+    /**
+     * Get the process watcher shared by every caller, instead of polling
+     * {@link #isProcessRunning(String)}. Add a listener to be told when processes start or exit,
+     * filtered by name or uid, and remove it when done, so the watcher stops reading the process
+     * table.
+     *
+     * @return the watcher.
+     */
+    public ProcessWatcher getProcessWatcher() {
+        return processWatcher;
     }
 
     /**
@@ -524,13 +972,16 @@ public class RootManager {
         if (TextUtils.isEmpty(processName)) {
             return false;
         }
-        Result res = runCommand(Constants.COMMAND_PIDOF + processName);
-
-        if (!TextUtils.isEmpty(res.getMessage())) {
-            return killProcessById(res.getMessage());
-        } else {
+        int[] pids = getProcessTable(0).findPids(processName);
+        if (pids.length == 0) {
             return false;
         }
+
+        StringBuilder pidList = new StringBuilder();
+        for (int pid : pids) {
+            pidList.append(pid).append(' ');
+        }
+        return killProcessById(pidList.toString().trim());
     }
 
     /**
@@ -544,10 +995,123 @@ public class RootManager {
             return false;
         }
 
-        Result res = runCommand(Constants.COMMAND_KILL + processID);
+        Result res = runCommand(Constants.COMMAND_KILL + processID, Command.Priority.INTERACTIVE);
+        invalidateQueryCache();
         return res.getResult();
     }
 
+    /**
+     * Kill the processes of many names in one shell round trip, see
+     * {@link #killProcesses(Collection, long)}. The grace period is
+     * {@link Constants#KILL_GRACE_PERIOD}.
+     *
+     * @param processNames the names of the processes.
+     * @return the outcome of each name.
+     */
+    public Map<String, KillCommand.Outcome> killProcesses(Collection<String> processNames) {
+        return killProcesses(processNames, Constants.KILL_GRACE_PERIOD);
+    }
+
+    /**
+     * Kill the processes of many names in one shell round trip.
+     * <p>
+     * The names are looked up exactly in the process table, then every matching process is sent
+     * <i>SIGTERM</i>, and those still running after the grace period <i>SIGKILL</i>. Do NOT
+     * call this function on UI thread.
+     * </p>
+     *
+     * @param processNames the names of the processes.
+     * @param gracePeriod  the time in milliseconds before <i>SIGKILL</i>, or 0 to send
+     *                     <i>SIGKILL</i> right away.
+     * @return the outcome of each name, the worst outcome of its processes, or
+     * {@link KillCommand.Outcome#NOT_FOUND} if there is no such process.
+     */
+    public Map<String, KillCommand.Outcome> killProcesses(Collection<String> processNames,
+            long gracePeriod) {
+        Map<String, KillCommand.Outcome> outcomes = new LinkedHashMap<>();
+        Map<String, int[]> targets = new LinkedHashMap<>();
+        List<Integer> pidList = new ArrayList<>();
+        ProcessTable table = getProcessTable(0);
+        synchronized (table) {
+            for (String name : processNames) {
+                int[] pids = TextUtils.isEmpty(name) ? new int[0] : table.findPids(name);
+                targets.put(name, pids);
+                for (int pid : pids) {
+                    pidList.add(pid);
+                }
+            }
+        }
+
+        Map<Integer, KillCommand.Outcome> pidOutcomes = killProcessesById(pidList, gracePeriod);
+        for (Map.Entry<String, int[]> target : targets.entrySet()) {
+            KillCommand.Outcome worst = KillCommand.Outcome.NOT_FOUND;
+            for (int pid : target.getValue()) {
+                KillCommand.Outcome outcome = pidOutcomes.get(pid);
+                if (outcome != null && outcome.compareTo(worst) > 0) {
+                    worst = outcome;
+                }
+            }
+            outcomes.put(target.getKey(), worst);
+        }
+        return outcomes;
+    }
+
+    /**
+     * Kill many processes in one shell round trip, see
+     * {@link #killProcessesById(Collection, long)}. The grace period is
+     * {@link Constants#KILL_GRACE_PERIOD}.
+     *
+     * @param pids the process ids.
+     * @return the outcome of each process.
+     */
+    public Map<Integer, KillCommand.Outcome> killProcessesById(Collection<Integer> pids) {
+        return killProcessesById(pids, Constants.KILL_GRACE_PERIOD);
+    }
+
+    /**
+     * Kill many processes in one shell round trip. Every process is sent <i>SIGTERM</i>, and
+     * those still running after the grace period <i>SIGKILL</i>. Do NOT call this function on UI
+     * thread.
+     *
+     * @param pids        the process ids.
+     * @param gracePeriod the time in milliseconds before <i>SIGKILL</i>, or 0 to send
+     *                    <i>SIGKILL</i> right away.
+     * @return the outcome of each process, {@link KillCommand.Outcome#ALIVE} for every process
+     * if the command could not be run.
+     */
+    public Map<Integer, KillCommand.Outcome> killProcessesById(Collection<Integer> pids,
+            long gracePeriod) {
+        int[] pidArray = new int[pids.size()];
+        int count = 0;
+        for (Integer pid : pids) {
+            if (pid != null && pid > 0) {
+                pidArray[count++] = pid;
+            }
+        }
+        if (count == 0) {
+            return new LinkedHashMap<>();
+        }
+
+        KillCommand command = new KillCommand(Arrays.copyOf(pidArray, count), gracePeriod);
+        command.setPriority(Command.Priority.INTERACTIVE);
+        try {
+            ShellPool.getRootPool().add(command).waitForFinish();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+        } catch (PermissionException e) {
+            e.printStackTrace();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+
+        invalidateQueryCache();
+        return command.getOutcomes();
+    }
+
     /**
      * Restart the device.
      */
@@ -555,45 +1119,278 @@ public class RootManager {
         killProcessByName("zygote");
     }
 
-    private boolean accessRoot() {
+    /**
+     * Get the process table, read again if it is older than the given age.
+     */
+    private ProcessTable getProcessTable(long maxAge) {
+        synchronized (processTable) {
+            long refreshedAt = processTable.getRefreshTime();
+            if (refreshedAt == 0 || System.nanoTime() - refreshedAt >= maxAge * 1000000L) {
+                processTable.refresh();
+            }
+            return processTable;
+        }
+    }
+
+    private Command newInstallCommand(String apkPath, String installLocation,
+            final ResultFuture future) {
+        String command = Constants.COMMAND_INSTALL;
+        if (RootUtils.isNeedPathSDK()) {
+            command = Constants.COMMAND_INSTALL_PATCH + command;
+        }
 
-        boolean result = false;
-        accessRoot = false;
+        if (!TextUtils.isEmpty(installLocation)) {
+            if (installLocation.equalsIgnoreCase("ex")) {
+                command = command + Constants.COMMAND_INSTALL_LOCATION_EXTERNAL;
+            } else if (installLocation.equalsIgnoreCase("in")) {
+                command = command + Constants.COMMAND_INSTALL_LOCATION_INTERNAL;
+            }
+        }
 
-        Command commandImpl = new Command("id") {
+        command = command + apkPath;
+
+        final List<String> output = new ArrayList<>();
+        return new Command(command) {
 
             @Override
             public void onUpdate(int id, String message) {
-                if (message != null && message.toLowerCase().contains("uid=0")) {
-                    accessRoot = true;
+                output.add(message);
+            }
+
+            @Override
+            public void onFinished(int id) {
+                ResultBuilder builder = Result.newBuilder();
+                /* An install cancelled while running may have finished, so pm has the say */
+                if (isCancelled() && !isWritten()) {
+                    builder.setInstallCancelled();
+                } else {
+                    parseInstallOutput(output, builder);
                 }
+                queryCache.invalidateAll();
+                future.set(builder.setOutputLines(output).setCommand(this).build());
+            }
+
+        }.setPriority(Command.Priority.BULK);
+    }
+
+    private interface InstallFeeder {
+
+        int feed(StdinCommand command) throws IOException, InterruptedException,
+                TimeoutException;
+    }
+
+    private Result runInstall(StdinCommand command, InstallFeeder feeder) {
+        ResultBuilder builder = Result.newBuilder();
+        try {
+            int exitCode = feeder.feed(command);
+            List<String> output = command.getOutputLines();
+            parseInstallOutput(output, builder);
+            builder.setOutputLines(output).setExitCode(exitCode);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            builder.setCommandFailedInterrupted();
+        } catch (IOException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            builder.setCommandFailedTimeout();
+        }
+
+        queryCache.invalidateAll();
+        return builder.build();
+    }
+
+    /**
+     * Classify the output of <i>"pm install"</i>, i.e., <i>"Success"</i> or
+     * <i>"Failure [INSTALL_FAILED_INSUFFICIENT_STORAGE]"</i>.
+     */
+    private static void parseInstallOutput(List<String> output, ResultBuilder builder) {
+        builder.setInstallFailed();
+        for (String line : output) {
+            if (line.contains("Success") || line.contains("success")) {
+                builder.setInstallSuccess();
+                return;
+            } else if (line.contains("FAILED_INSUFFICIENT_STORAGE")) {
+                builder.setInsallFailedNoSpace();
+                return;
+            } else if (line.contains("FAILED_INCONSISTENT_CERTIFICATES")) {
+                builder.setInstallFailedWrongCer();
+                return;
+            } else if (line.contains("FAILED_CONTAINER_ERROR")) {
+                builder.setInstallFailedWrongContainer();
+                return;
+            }
+        }
+    }
+
+    private Command newUninstallCommand(String packageName, final ResultFuture future) {
+        String command = Constants.COMMAND_UNINSTALL + packageName;
+        final StringBuilder infoSb = new StringBuilder();
+
+        return new Command(command) {
+
+            @Override
+            public void onUpdate(int id, String message) {
+                infoSb.append(message + "\n");
             }
 
             @Override
             public void onFinished(int id) {
+                ResultBuilder builder = Result.newBuilder();
+                String finalInfo = infoSb.toString();
+                if (TextUtils.isEmpty(finalInfo)) {
+                    builder.setUninstallFailed();
+                } else {
+                    if (finalInfo.contains("Success") || finalInfo.contains("success")) {
+                        builder.setUninstallSuccess();
+                    } else {
+                        builder.setUninstallFailed();
+                    }
+                }
+                queryCache.invalidateAll();
+                future.set(builder.setCommand(this).build());
+            }
+
+        }.setPriority(Command.Priority.BULK);
+    }
+
+    private Command newCustomCommand(String command, final ResultFuture future) {
+        final List<String> output = new ArrayList<>();
+        final List<String> error = new ArrayList<>();
+        return new Command(command) {
+
+            @Override
+            public void onUpdate(int id, String message) {
+                output.add(message);
+            }
 
+            @Override
+            public void onError(int id, String message) {
+                error.add(message);
+            }
+
+            @Override
+            public void onFinished(int id) {
+                future.set(Result.newBuilder().setCustomOutput(output).setErrorOutput(error)
+                        .setCommand(this).build());
             }
 
         };
+    }
+
+    private Command newSinkCommand(String command, final OutputSink sink,
+            final ResultFuture future) {
+        final List<String> error = new ArrayList<>();
+        return new Command(command) {
+
+            @Override
+            public void onUpdate(int id, String message) {
+                sink.addLine(message);
+            }
+
+            @Override
+            public void onError(int id, String message) {
+                error.add(message);
+            }
+
+            @Override
+            public void onFinished(int id) {
+                sink.finish();
+                ResultBuilder builder = Result.newBuilder();
+                if (getExitCode() == 0) {
+                    builder.setCommandSuccess();
+                } else {
+                    builder.setCommandFailed();
+                }
+                future.set(builder.setErrorOutput(error).setCommand(this).build());
+            }
+
+        };
+    }
+
+    /**
+     * Run a command in the root shell pool and block until it finishes or times out.
+     */
+    private Result waitForResult(Command command, ResultFuture future) {
+        final ResultBuilder builder = Result.newBuilder();
 
         try {
-            Shell.startRootShell().add(commandImpl).waitForFinish();
-            result = accessRoot;
+            ShellPool.getRootPool().add(command).waitForFinish();
+            return future.getNow(builder.setCommandFailedTimeout().build());
         } catch (InterruptedException e) {
             e.printStackTrace();
-            result = false;
+            builder.setCommandFailedInterrupted();
         } catch (IOException e) {
             e.printStackTrace();
-            result = false;
+            builder.setCommandFailed();
         } catch (TimeoutException e) {
             e.printStackTrace();
-            result = false;
+            builder.setCommandFailedTimeout();
         } catch (PermissionException e) {
             e.printStackTrace();
-            result = false;
+            builder.setCommandFailedDenied();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
         }
 
-        return result;
+        return builder.build();
+    }
+
+    /**
+     * Block until a future completes or the command timeout passes, the command is cancelled on
+     * timeout.
+     */
+    private Result waitForResult(ResultFuture future) {
+        final ResultBuilder builder = Result.newBuilder();
+
+        try {
+            return future.get(Constants.COMMAND_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            builder.setCommandFailedInterrupted();
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            future.cancel(true);
+            builder.setCommandFailedTimeout();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Add a command to the root shell pool, the future is completed by the command or here if
+     * the command can not be added.
+     */
+    private ResultFuture submit(Command command, ResultFuture future) {
+        final ResultBuilder builder = Result.newBuilder();
 
+        try {
+            future.setCommand(command);
+            ShellPool.getRootPool().add(command);
+            return future;
+        } catch (IOException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            builder.setCommandFailedTimeout();
+        } catch (PermissionException e) {
+            e.printStackTrace();
+            builder.setCommandFailedDenied();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            builder.setCommandFailed();
+        }
+
+        future.set(builder.build());
+        return future;
+    }
+
+    private boolean accessRoot() {
+        Result result = runQuery("id", Command.Priority.INTERACTIVE);
+        String message = result.getMessage();
+        return message != null && message.toLowerCase().contains("uid=0");
     }
 }
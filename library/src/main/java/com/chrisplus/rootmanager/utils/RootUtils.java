@@ -16,7 +16,27 @@ public class RootUtils {
 
     private final static String TAG = "RootManager";
 
-    private static int cmdID = 0;
+    private static final Logger LOGCAT = new Logger() {
+        public void log(Level level, String tag, String message) {
+            switch (level) {
+                case VERBOSE:
+                    Log.v(tag, message);
+                    break;
+                case DEBUG:
+                    Log.d(tag, message);
+                    break;
+                case INFO:
+                    Log.i(tag, message);
+                    break;
+                case WARN:
+                    Log.w(tag, message);
+                    break;
+                default:
+                    Log.e(tag, message);
+                    break;
+            }
+        }
+    };
 
     /**
      * To check if the caller is on the ui thread, throw exception if it calls
@@ -28,6 +48,14 @@ public class RootUtils {
         }
     }
 
+    /**
+     * Send the logs of the shell engine to logcat. This is done when {@link RootManager} is
+     * loaded, so it is only needed when the shells are used directly.
+     */
+    public static void installLogger() {
+        ShellUtils.setLogger(LOGCAT);
+    }
+
     /**
      * Output log to logcat as the debug level.
      *
@@ -56,9 +84,7 @@ public class RootUtils {
      * @return the actual ID.
      */
     public static int generateCommandID() {
-        cmdID = cmdID + 1;
-        RootUtils.Log("Return a command id " + cmdID);
-        return cmdID;
+        return ShellUtils.generateCommandID();
     }
 
     /**
@@ -78,4 +104,13 @@ public class RootUtils {
     public static boolean isKitKatUpper() {
         return Build.VERSION.SDK_INT >= 19;
     }
+
+    /**
+     * Check if Android 5.0 and upper.
+     *
+     * @return true for 5.0 upper.
+     */
+    public static boolean isLollipopUpper() {
+        return Build.VERSION.SDK_INT >= 21;
+    }
 }